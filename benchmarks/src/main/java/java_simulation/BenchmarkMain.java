@@ -0,0 +1,31 @@
+package java_simulation;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * ベンチマークの起動クラス。JMH のコマンドライン引数をそのまま受け付け、
+ * 常に GC プロファイラ（呼び出しあたりの割り当て量 gc.alloc.rate.norm など）を付けて実行する。
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar                 # 全ベンチマーク
+ * java -jar benchmarks/target/benchmarks.jar SimulationRun   # 名前で絞り込み
+ * </pre>
+ */
+public class BenchmarkMain {
+
+    /** ベンチマーク用のグラフ・乱数の固定シード */
+    static final long SEED = 20240601L;
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
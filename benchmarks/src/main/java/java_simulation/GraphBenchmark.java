@@ -0,0 +1,63 @@
+package java_simulation;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java_simulation.DiscreteTimeTrendEffectSARSimulation.Graph;
+
+/**
+ * グラフ生成と連結性判定のベンチマーク。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GraphBenchmark {
+
+    @Param({"10000", "100000"})
+    public int numVertices;
+
+    @Param({"10"})
+    public double averageDegree;
+
+    private RandomStream random;
+    private Graph graph;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        random = new RandomStream(BenchmarkMain.SEED);
+        graph = DiscreteTimeTrendEffectSARSimulation.generateErdosRenyiGraph(
+                new RandomStream(BenchmarkMain.SEED), numVertices, averageDegree);
+        // 構築時の連結成分数を消し、判定のたびに数え直させる
+        graph.componentCount = -1;
+    }
+
+    @Benchmark
+    public Graph generateErdosRenyiGraph() {
+        return DiscreteTimeTrendEffectSARSimulation.generateErdosRenyiGraph(random, numVertices, averageDegree);
+    }
+
+    @Benchmark
+    public boolean checkGraphConnectivity() {
+        return DiscreteTimeTrendEffectSARSimulation.checkGraphConnectivity(graph, numVertices);
+    }
+
+    @Benchmark
+    public Graph largestConnectedComponent() {
+        return DiscreteTimeTrendEffectSARSimulation.largestConnectedComponent(graph);
+    }
+}
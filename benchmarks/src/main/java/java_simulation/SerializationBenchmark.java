@@ -0,0 +1,93 @@
+package java_simulation;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 結果の書き出し（{@link ResultSink}）のベンチマーク。
+ * 1 回の呼び出しで grid × grid セル × iterations 回分の時系列を書き込み、シンクを閉じるまでを測る。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializationBenchmark {
+
+    @Param({"TRAJECTORIES", "AGGREGATE"})
+    public SimulationConfig.OutputMode outputMode;
+
+    @Param({"20"})
+    public int grid;
+
+    @Param({"100"})
+    public int iterations;
+
+    private static final int MAX_TIME = 100;
+    private static final int NUM_VERTICES = 10000;
+
+    private Path directory;
+    private int[] aa;
+    private int[] ab;
+    private int[] r;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("sar-serialization");
+        Random random = new Random(BenchmarkMain.SEED);
+        aa = new int[MAX_TIME + 1];
+        ab = new int[MAX_TIME + 1];
+        r = new int[MAX_TIME + 1];
+        for (int t = 0; t <= MAX_TIME; t++) {
+            aa[t] = random.nextInt(NUM_VERTICES / 4);
+            ab[t] = random.nextInt(NUM_VERTICES / 4);
+            r[t] = random.nextInt(NUM_VERTICES / 2);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void writeBatch() throws IOException {
+        String outputDir = directory.toString();
+        ResultSink sink = outputMode == SimulationConfig.OutputMode.AGGREGATE
+                ? new AggregatingResultSink(outputDir, 1, grid, grid, NUM_VERTICES, MAX_TIME, 100)
+                : new NpyResultSink(outputDir, 1, grid, grid, iterations, MAX_TIME);
+        try {
+            for (int alphaIdx = 0; alphaIdx < grid; alphaIdx++) {
+                for (int lambdaIdx = 0; lambdaIdx < grid; lambdaIdx++) {
+                    for (int iteration = 0; iteration < iterations; iteration++) {
+                        sink.accept(alphaIdx, lambdaIdx, iteration, aa, ab, r, MAX_TIME);
+                    }
+                }
+            }
+        } finally {
+            sink.close();
+        }
+    }
+}
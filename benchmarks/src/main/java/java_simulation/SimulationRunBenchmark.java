@@ -0,0 +1,130 @@
+package java_simulation;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java_simulation.DiscreteTimeTrendEffectSARSimulation.Graph;
+
+/**
+ * 1 回分のシミュレーション（{@link SARStepKernel#run}）のベンチマーク。
+ * グラフは試行ごとに 1 度だけ生成し、呼び出しごとに乱数シードだけを変える。
+ * (α, λ) は伝播しない領域・相転移付近・大域的に伝播する領域の代表点。
+ * {@link #runBitSliced} は 64 回分を同時に実行し、1 回あたりの時間で報告する。
+ * {@link #runCompact} は同じグラフを .csr に書き出してメモリマップし、{@link CompactSARKernel} で実行する。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SimulationRunBenchmark {
+
+    @Param({"10000"})
+    public int numVertices;
+
+    @Param({"0.0:0.1", "0.0:0.5", "0.5:0.3", "1.0:0.9"})
+    public String alphaLambda;
+
+    @Param({"0.2"})
+    public double p;
+
+    @Param({"1:4"})
+    public String thresholds;
+
+    @Param({"BERNOULLI", "SKIP"})
+    public SimulationConfig.SamplingMode samplingMode;
+
+    private Graph graph;
+    private SARStepKernel kernel;
+    private BitSlicedSARKernel bitSlicedKernel;
+    private Path graphFile;
+    private OffHeapGraph offHeapGraph;
+    private CompactSARKernel compactKernel;
+    private double alpha;
+    private double lambda;
+    private int[] aa;
+    private int[] ab;
+    private int[] r;
+    private int[][] laneAa;
+    private int[][] laneAb;
+    private int[][] laneR;
+    private int[] laneStopTimes;
+    private long invocation;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        SimulationConfig config = new SimulationConfig();
+        config.numVertices = numVertices;
+        config.initialAdoptionRate = 1.0 / numVertices;
+        config.p = p;
+        String[] pair = thresholds.split(":");
+        config.ta = Integer.parseInt(pair[0]);
+        config.tb = Integer.parseInt(pair[1]);
+        config.samplingMode = samplingMode;
+        String[] point = alphaLambda.split(":");
+        alpha = Double.parseDouble(point[0]);
+        lambda = Double.parseDouble(point[1]);
+
+        graph = DiscreteTimeTrendEffectSARSimulation.generateConnectedGraph(new RandomStream(BenchmarkMain.SEED), config);
+        kernel = new SARStepKernel(config);
+        aa = new int[config.maxTime + 1];
+        ab = new int[config.maxTime + 1];
+        r = new int[config.maxTime + 1];
+        bitSlicedKernel = new BitSlicedSARKernel(config);
+        laneAa = new int[BitSlicedSARKernel.LANES][config.maxTime + 1];
+        laneAb = new int[BitSlicedSARKernel.LANES][config.maxTime + 1];
+        laneR = new int[BitSlicedSARKernel.LANES][config.maxTime + 1];
+        laneStopTimes = new int[BitSlicedSARKernel.LANES];
+        graphFile = Files.createTempFile("sar-benchmark", ".csr");
+        GraphFile.write(graph, graphFile);
+        offHeapGraph = OffHeapGraph.map(graphFile);
+        compactKernel = new CompactSARKernel(config);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(graphFile);
+    }
+
+    @Benchmark
+    public void run(Blackhole blackhole) {
+        RandomStream random = new RandomStream(RandomStream.deriveSeed(BenchmarkMain.SEED, invocation++));
+        kernel.run(graph, alpha, lambda, random, aa, ab, r);
+        blackhole.consume(r[r.length - 1]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BitSlicedSARKernel.LANES)
+    public void runBitSliced(Blackhole blackhole) {
+        RandomStream random = new RandomStream(RandomStream.deriveSeed(BenchmarkMain.SEED, invocation++));
+        bitSlicedKernel.run(graph, alpha, lambda, random, BitSlicedSARKernel.LANES, laneAa, laneAb, laneR,
+                laneStopTimes);
+        blackhole.consume(laneR[0][laneR[0].length - 1]);
+    }
+
+    @Benchmark
+    public void runCompact(Blackhole blackhole) {
+        RandomStream random = new RandomStream(RandomStream.deriveSeed(BenchmarkMain.SEED, invocation++));
+        compactKernel.run(offHeapGraph, alpha, lambda, random, aa, ab, r);
+        blackhole.consume(r[r.length - 1]);
+    }
+}
@@ -0,0 +1,439 @@
+package java_simulation;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * 採用の不連続な転移の付近だけを細かく調べる適応的な (α, λ) 掃引。
+ * <p>
+ * まず alphaValues × lambdaValues の粗いグリッドを実行し、隣り合う α・λ で囲まれた各セルのうち、
+ * 4 隅の平均最終伝播規模の差が {@link SimulationConfig#adaptiveJumpThreshold} と標準誤差の
+ * {@link #SIGNIFICANCE} 倍の両方を超えるか、最終伝播規模の分布が二峰的な隅とそうでない隅が混在する
+ * （かつ N/2 以上に広がる回の割合の差が標準誤差の {@link #SIGNIFICANCE} 倍を超える）セルだけを
+ * 4 分割する（四分木）。二峰的とは、N/2 未満で終わる回と N/2 以上に広がる回がどちらも
+ * {@link SimulationConfig#adaptiveMinorityModeShare} 以上の割合で起きること。
+ * これを {@link SimulationConfig#adaptiveLevels} 回繰り返し、細分 1 回ごとに刻み幅は半分、
+ * 点あたりの反復回数は {@link SimulationConfig#adaptiveIterationGrowth} 倍になる。
+ * 分割したセルは 9 点すべてを評価するので、細分した領域の中では α 方向・λ 方向とも同じ刻み幅になる。
+ * 前のレベルから引き継いだ隅の点にも、まだ使っていない反復番号で反復を足してそのレベルの反復回数までそろえる。
+ * 急変をはさみ、さらに細分するかを決める隅の点だけ反復が少ないということは無い。
+ * <p>
+ * 点は最も細かい刻み幅の格子座標 (i, j) で管理し、乱数のシードもこの座標から導出する
+ * （{@link ParallelSweepEngine#runPoints}）。そのためスレッド数や細分の順序に関係なく結果は再現する。
+ */
+public class AdaptiveSweep {
+
+    /** 急変とみなす平均最終伝播規模の差の下限（差の標準誤差の何倍か）。少ない反復数の揺らぎで細分しないため */
+    static final double SIGNIFICANCE = 3.0;
+
+    /** 評価済みの 1 点と、その集計値 */
+    private static final class Point {
+        final int i;
+        final int j;
+        final double alpha;
+        final double lambda;
+        final int level;
+        /** これまでに実行したネットワークあたりの反復回数 */
+        int iterationsPerNetwork;
+        long count;
+        /** 最終伝播規模の和と二乗和 */
+        final ExactMoments finalSize = new ExactMoments(1);
+        /** 最終伝播規模が N/2 以上になった回数 */
+        long largeOutbreaks;
+        final int[] finalSizeHistogram;
+        final long[] aaSum;
+        final long[] abSum;
+        final long[] rSum;
+        long stopTimeSum;
+
+        Point(int i, int j, double alpha, double lambda, int level, int timeLength, int numBins) {
+            this.i = i;
+            this.j = j;
+            this.alpha = alpha;
+            this.lambda = lambda;
+            this.level = level;
+            this.finalSizeHistogram = new int[numBins];
+            this.aaSum = new long[timeLength];
+            this.abSum = new long[timeLength];
+            this.rSum = new long[timeLength];
+        }
+
+        double meanFinalFraction(int numVertices) {
+            return finalSize.mean(0, count) / numVertices;
+        }
+
+        /** 最終伝播規模が N/2 以上になった回の割合 */
+        double largeShare() {
+            return (double) largeOutbreaks / count;
+        }
+
+        double largeShareVariance() {
+            double share = largeShare();
+            return share * (1 - share);
+        }
+
+        double finalFractionVariance(int numVertices) {
+            return finalSize.variance(0, count) / ((double) numVertices * numVertices);
+        }
+    }
+
+    /** 1 レベル分の点の結果を集計するシンク（点 i は alphaIdx = i で届く） */
+    private final class PointSink implements ResultSink {
+        private final Point[] targets;
+
+        PointSink(Point[] targets) {
+            this.targets = targets;
+        }
+
+        @Override
+        public void accept(int alphaIdx, int lambdaIdx, int iterationIndex, int[] aa, int[] ab, int[] r,
+                           int stopTime) {
+            Point point = targets[alphaIdx];
+            int maxTime = config.maxTime;
+            int finalSize = aa[maxTime] + ab[maxTime] + r[maxTime];
+            int bin = Math.min(numBins - 1, (int) ((long) finalSize * numBins / config.numVertices));
+            synchronized (point) {
+                point.count++;
+                point.finalSize.add(0, finalSize);
+                if (2L * finalSize >= config.numVertices) {
+                    point.largeOutbreaks++;
+                }
+                point.finalSizeHistogram[bin]++;
+                point.stopTimeSum += stopTime;
+                for (int t = 0; t <= maxTime; t++) {
+                    point.aaSum[t] += aa[t];
+                    point.abSum[t] += ab[t];
+                    point.rSum[t] += r[t];
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private final SimulationConfig config;
+    private final ParallelSweepEngine engine;
+    private final int numBins;
+    /** 粗いグリッドの 1 刻みに相当する格子点の数 (2^adaptiveLevels) */
+    private final int scale;
+    private final double alphaStep;
+    private final double lambdaStep;
+    /** 評価済みの点。キーは格子座標 (i << 32) | j なので、α → λ の順に並ぶ */
+    private final TreeMap<Long, Point> points = new TreeMap<>();
+
+    public AdaptiveSweep(SimulationConfig config, ParallelSweepEngine engine) {
+        if (config.adaptiveLevels < 0 || config.adaptiveLevels > 20) {
+            throw new IllegalArgumentException("adaptiveLevels must be in [0, 20]: " + config.adaptiveLevels);
+        }
+        this.config = config;
+        this.engine = engine;
+        this.numBins = config.finalSizeBins;
+        this.scale = 1 << config.adaptiveLevels;
+        this.alphaStep = uniformStep(config.alphaValues, "alphaValues");
+        this.lambdaStep = uniformStep(config.lambdaValues, "lambdaValues");
+    }
+
+    /** 等間隔な値の刻み幅（値が 1 つなら 0） */
+    private static double uniformStep(double[] values, String name) {
+        if (values.length < 2) {
+            return 0;
+        }
+        double step = values[1] - values[0];
+        for (int k = 2; k < values.length; k++) {
+            if (Math.abs(values[k] - values[k - 1] - step) > 1e-9 * Math.max(1, Math.abs(step))) {
+                throw new IllegalArgumentException(name + " must be evenly spaced for the adaptive sweep");
+            }
+        }
+        return step;
+    }
+
+    /**
+     * 1 バッチ分の適応的な掃引を実行し、結果を outputDir へ書き出す。
+     */
+    public void run(int batch, String outputDir) throws IOException {
+        points.clear();
+        // レベル 0 のセル（左下の格子座標）。α または λ が 1 値だけなら、その方向には幅 0 のセルになる
+        int alphaCells = Math.max(1, config.alphaValues.length - 1);
+        int lambdaCells = Math.max(1, config.lambdaValues.length - 1);
+        List<Long> cells = new ArrayList<>();
+        for (int a = 0; a < alphaCells; a++) {
+            for (int l = 0; l < lambdaCells; l++) {
+                cells.add(key(a * scale, l * scale));
+            }
+        }
+
+        int iterations = config.simulationIterationCount;
+        long totalRuns = 0;
+        for (int level = 0; ; level++) {
+            TreeSet<Long> corners = cellPoints(cells, level);
+            int newPoints = 0;
+            for (long key : corners) {
+                if (!points.containsKey(key)) {
+                    int i = (int) (key >>> 32);
+                    int j = (int) key;
+                    points.put(key, new Point(i, j, coordinate(config.alphaValues, alphaStep, i),
+                            coordinate(config.lambdaValues, lambdaStep, j), level, config.maxTime + 1, numBins));
+                    newPoints++;
+                }
+            }
+            // 新しい点（反復 0 回）と前のレベルの隅を、これまでの反復回数ごとにまとめて level の反復回数まで実行する
+            TreeMap<Integer, List<Long>> shortfalls = new TreeMap<>();
+            for (long key : corners) {
+                int done = points.get(key).iterationsPerNetwork;
+                if (done < iterations) {
+                    shortfalls.computeIfAbsent(done, d -> new ArrayList<>()).add(key);
+                }
+            }
+            long runs = 0;
+            for (Map.Entry<Integer, List<Long>> shortfall : shortfalls.entrySet()) {
+                runs += evaluate(batch, shortfall.getValue(), shortfall.getKey(), iterations);
+            }
+            totalRuns += runs;
+            System.out.printf("adaptive level %d: %d cells, %d new points, %d topped-up points, %d runs%n",
+                    level, cells.size(), newPoints, corners.size() - newPoints, runs);
+            if (level == config.adaptiveLevels) {
+                break;
+            }
+            cells = refine(cells, level);
+            if (cells.isEmpty()) {
+                break;
+            }
+            iterations = Math.multiplyExact(iterations, config.adaptiveIterationGrowth);
+        }
+
+        long fineAlpha = (long) (config.alphaValues.length - 1) * scale + 1;
+        long fineLambda = (long) (config.lambdaValues.length - 1) * scale + 1;
+        System.out.printf("adaptive: %d runs (uniform grid at the finest step: %d runs)%n",
+                totalRuns, fineAlpha * fineLambda * config.totalIterations());
+        write(batch, Paths.get(outputDir));
+    }
+
+    /** level のセルの幅（格子点の数）。値が 1 つしかない方向は 0 */
+    private int alphaSpan(int level) {
+        return config.alphaValues.length > 1 ? scale >> level : 0;
+    }
+
+    private int lambdaSpan(int level) {
+        return config.lambdaValues.length > 1 ? scale >> level : 0;
+    }
+
+    /** level のセルの隅の格子座標 */
+    private TreeSet<Long> cellPoints(List<Long> cells, int level) {
+        int di = alphaSpan(level);
+        int dj = lambdaSpan(level);
+        TreeSet<Long> corners = new TreeSet<>();
+        for (long cell : cells) {
+            int i = (int) (cell >>> 32);
+            int j = (int) cell;
+            corners.add(key(i, j));
+            corners.add(key(i + di, j));
+            corners.add(key(i, j + dj));
+            corners.add(key(i + di, j + dj));
+        }
+        return corners;
+    }
+
+    /**
+     * 反復を done 回済ませた keys の点に、反復番号 done から iterations 回目までを足す。
+     *
+     * @return 実行した回数
+     */
+    private long evaluate(int batch, List<Long> keys, int done, int iterations) {
+        int numPoints = keys.size();
+        Point[] targets = new Point[numPoints];
+        double[] alphas = new double[numPoints];
+        double[] lambdas = new double[numPoints];
+        long[] pointKeys = new long[numPoints];
+        for (int index = 0; index < numPoints; index++) {
+            Point point = points.get(keys.get(index));
+            targets[index] = point;
+            alphas[index] = point.alpha;
+            lambdas[index] = point.lambda;
+            pointKeys[index] = keys.get(index);
+            point.iterationsPerNetwork = iterations;
+        }
+        engine.runPoints(batch, alphas, lambdas, pointKeys, done, iterations - done, new PointSink(targets));
+        return (long) numPoints * config.networkIterationCount * (iterations - done);
+    }
+
+    /**
+     * level のセルのうち、平均最終伝播規模が急変するか二峰性が切り替わるものを 4 分割した次のレベルのセル。
+     */
+    private List<Long> refine(List<Long> cells, int level) {
+        int di = alphaSpan(level);
+        int dj = lambdaSpan(level);
+        int halfI = di >> 1;
+        int halfJ = dj >> 1;
+        TreeSet<Long> next = new TreeSet<>();
+        for (long cell : cells) {
+            int i = (int) (cell >>> 32);
+            int j = (int) cell;
+            if (!needsRefinement(points.get(key(i, j)), points.get(key(i + di, j)),
+                    points.get(key(i, j + dj)), points.get(key(i + di, j + dj)))) {
+                continue;
+            }
+            next.add(key(i, j));
+            next.add(key(i + halfI, j));
+            next.add(key(i, j + halfJ));
+            next.add(key(i + halfI, j + halfJ));
+        }
+        return new ArrayList<>(next);
+    }
+
+    private boolean needsRefinement(Point... corners) {
+        Point lowestMean = corners[0];
+        Point highestMean = corners[0];
+        Point lowestShare = corners[0];
+        Point highestShare = corners[0];
+        int bimodal = 0;
+        for (Point corner : corners) {
+            if (corner.meanFinalFraction(config.numVertices) < lowestMean.meanFinalFraction(config.numVertices)) {
+                lowestMean = corner;
+            }
+            if (corner.meanFinalFraction(config.numVertices) > highestMean.meanFinalFraction(config.numVertices)) {
+                highestMean = corner;
+            }
+            if (corner.largeShare() < lowestShare.largeShare()) {
+                lowestShare = corner;
+            }
+            if (corner.largeShare() > highestShare.largeShare()) {
+                highestShare = corner;
+            }
+            if (isBimodal(corner)) {
+                bimodal++;
+            }
+        }
+        double jump = highestMean.meanFinalFraction(config.numVertices) - lowestMean.meanFinalFraction(config.numVertices);
+        double jumpError = Math.sqrt(highestMean.finalFractionVariance(config.numVertices) / highestMean.count
+                + lowestMean.finalFractionVariance(config.numVertices) / lowestMean.count);
+        boolean sharpChange = jump > config.adaptiveJumpThreshold && jump > SIGNIFICANCE * jumpError;
+
+        // 二峰的な隅とそうでない隅が混在し、かつ大きく広がる割合の差が揺らぎでは説明できないとき
+        double shareChange = highestShare.largeShare() - lowestShare.largeShare();
+        double shareError = Math.sqrt(highestShare.largeShareVariance() / highestShare.count
+                + lowestShare.largeShareVariance() / lowestShare.count);
+        boolean turnsBimodal = bimodal > 0 && bimodal < corners.length && shareChange > SIGNIFICANCE * shareError;
+        return sharpChange || turnsBimodal;
+    }
+
+    /** 小さく終わる回と大きく広がる回がどちらも adaptiveMinorityModeShare 以上あるか */
+    private boolean isBimodal(Point point) {
+        double largeShare = point.largeShare();
+        return Math.min(largeShare, 1 - largeShare) >= config.adaptiveMinorityModeShare;
+    }
+
+    /** 格子座標 index の値。粗いグリッド上の点は values の値をそのまま使う */
+    private double coordinate(double[] values, double step, int index) {
+        return values[index / scale] + (index % scale) * (step / scale);
+    }
+
+    private static long key(int i, int j) {
+        return ((long) i << 32) | j;
+    }
+
+    /**
+     * 結果を書き出す。点は α → λ の順に並ぶ。
+     * <ul>
+     *   <li>adaptive_points_[batch].csv：各点の α, λ, レベル, 反復回数, 最終伝播規模 / N の平均・分散,
+     *       N/2 以上に広がった回の割合, 二峰性係数, 止まった時刻の平均</li>
+     *   <li>adaptive_aa_mean_[batch].npy, adaptive_ab_mean_[batch].npy, adaptive_r_mean_[batch].npy：形状 (点, maxTime + 1), float64</li>
+     *   <li>adaptive_final_size_hist_[batch].npy：形状 (点, bins), int32</li>
+     *   <li>critical_lambda_[batch].csv：α ごとに、最も細かく刻んだ λ の区間のうち平均最終伝播規模が最も大きく跳ぶ区間</li>
+     * </ul>
+     */
+    private void write(int batch, Path directory) throws IOException {
+        Files.createDirectories(directory);
+        int numPoints = points.size();
+        int timeLength = config.maxTime + 1;
+        int numVertices = config.numVertices;
+        double[] aaMean = new double[numPoints * timeLength];
+        double[] abMean = new double[numPoints * timeLength];
+        double[] rMean = new double[numPoints * timeLength];
+        int[] histogram = new int[numPoints * numBins];
+
+        try (BufferedWriter writer = Files.newBufferedWriter(
+                directory.resolve("adaptive_points_" + batch + ".csv"), StandardCharsets.UTF_8)) {
+            writer.write("alpha,lambda,level,iterations,final_size_mean,final_size_var,large_outbreak_share,bimodality,stop_time_mean");
+            writer.newLine();
+            int index = 0;
+            for (Point point : points.values()) {
+                writer.write(point.alpha + "," + point.lambda + "," + point.level + "," + point.count + ","
+                        + point.meanFinalFraction(numVertices) + "," + point.finalFractionVariance(numVertices) + ","
+                        + point.largeShare() + ","
+                        + AggregatingResultSink.bimodalityCoefficient(point.finalSizeHistogram) + ","
+                        + (double) point.stopTimeSum / point.count);
+                writer.newLine();
+                for (int t = 0; t < timeLength; t++) {
+                    aaMean[index * timeLength + t] = (double) point.aaSum[t] / point.count;
+                    abMean[index * timeLength + t] = (double) point.abSum[t] / point.count;
+                    rMean[index * timeLength + t] = (double) point.rSum[t] / point.count;
+                }
+                System.arraycopy(point.finalSizeHistogram, 0, histogram, index * numBins, numBins);
+                index++;
+            }
+        }
+
+        NpyArrayFile.writeDoubles(directory.resolve(NpyResultSink.fileName("adaptive_aa_mean", batch)),
+                aaMean, numPoints, timeLength);
+        NpyArrayFile.writeDoubles(directory.resolve(NpyResultSink.fileName("adaptive_ab_mean", batch)),
+                abMean, numPoints, timeLength);
+        NpyArrayFile.writeDoubles(directory.resolve(NpyResultSink.fileName("adaptive_r_mean", batch)),
+                rMean, numPoints, timeLength);
+        NpyArrayFile.writeInts(directory.resolve(NpyResultSink.fileName("adaptive_final_size_hist", batch)),
+                histogram, numPoints, numBins);
+
+        writeCriticalLambda(directory.resolve("critical_lambda_" + batch + ".csv"));
+    }
+
+    /** α ごとに、λ 方向に隣り合う評価済みの点のうち最も細かい区間で平均最終伝播規模の差が最大のものを書き出す */
+    private void writeCriticalLambda(Path path) throws IOException {
+        Map<Integer, List<Point>> rows = new TreeMap<>();
+        for (Point point : points.values()) {
+            rows.computeIfAbsent(point.i, i -> new ArrayList<>()).add(point);
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writer.write("alpha,lambda_low,lambda_high,lambda_c,jump");
+            writer.newLine();
+            for (List<Point> row : rows.values()) {
+                // points は (i, j) 順なので row は λ の昇順
+                if (row.size() < 2) {
+                    continue;
+                }
+                // 細分が集まった最も細かい区間の中で比べる（粗い区間は反復数が少なく揺らぎが大きい）
+                int finestGap = Integer.MAX_VALUE;
+                for (int k = 0; k + 1 < row.size(); k++) {
+                    finestGap = Math.min(finestGap, row.get(k + 1).j - row.get(k).j);
+                }
+                int largest = -1;
+                double largestJump = 0;
+                for (int k = 0; k + 1 < row.size(); k++) {
+                    if (row.get(k + 1).j - row.get(k).j != finestGap) {
+                        continue;
+                    }
+                    double jump = row.get(k + 1).meanFinalFraction(config.numVertices)
+                            - row.get(k).meanFinalFraction(config.numVertices);
+                    if (largest < 0 || Math.abs(jump) > Math.abs(largestJump)) {
+                        largestJump = jump;
+                        largest = k;
+                    }
+                }
+                Point low = row.get(largest);
+                Point high = row.get(largest + 1);
+                writer.write(low.alpha + "," + low.lambda + "," + high.lambda + ","
+                        + (low.lambda + high.lambda) / 2 + "," + largestJump);
+                writer.newLine();
+            }
+        }
+    }
+}
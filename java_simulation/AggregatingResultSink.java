@@ -0,0 +1,176 @@
+package java_simulation;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * 生の時系列を保存せず、(α, λ) セルごとの統計量だけを逐次集計するシンク。
+ * <p>
+ * 各時刻の活動家・偏屈家の採用者数と回復者数について、平均と分散（母分散）を持つ。
+ * 値はすべて整数なので、Welford 法の代わりに和と二乗和を {@link ExactMoments}（二乗和は 128 ビット）で正確に積算し、
+ * 分散は出力時に整数演算で求める。N = 10^9 の大きなネットワークでも桁あふれせず、
+ * 積算順序に依存しないため、スレッド数や終わった順に関係なく結果は同じになる。
+ * <p>
+ * あわせて最終伝播規模（最終時刻の採用者数 + 回復者数）のヒストグラムと、
+ * そこから求めた二峰性係数 (bimodality coefficient)、各回の止まった時刻の平均と分散を出力する。
+ * メモリ使用量は O(グリッド × 時刻) で、反復回数に依存しない。
+ */
+public class AggregatingResultSink implements ResultSink {
+
+    /** 1 セル分の集計値 */
+    private static final class CellStatistics {
+        long count;
+        final ExactMoments aa;
+        final ExactMoments ab;
+        final ExactMoments r;
+        final int[] finalSizeHistogram;
+        final ExactMoments stopTime = new ExactMoments(1);
+
+        CellStatistics(int timeLength, int numBins) {
+            aa = new ExactMoments(timeLength);
+            ab = new ExactMoments(timeLength);
+            r = new ExactMoments(timeLength);
+            finalSizeHistogram = new int[numBins];
+        }
+    }
+
+    private final Path directory;
+    private final int batchNumber;
+    private final int numAlpha;
+    private final int numLambda;
+    private final int numVertices;
+    private final int maxTime;
+    private final int numBins;
+    private final CellStatistics[] cells;
+
+    public AggregatingResultSink(String outputDir, int batchNumber, int numAlpha, int numLambda,
+                                 int numVertices, int maxTime, int numBins) throws IOException {
+        this.directory = Paths.get(outputDir);
+        Files.createDirectories(directory);
+        this.batchNumber = batchNumber;
+        this.numAlpha = numAlpha;
+        this.numLambda = numLambda;
+        this.numVertices = numVertices;
+        this.maxTime = maxTime;
+        this.numBins = numBins;
+        this.cells = new CellStatistics[numAlpha * numLambda];
+        for (int cell = 0; cell < cells.length; cell++) {
+            cells[cell] = new CellStatistics(maxTime + 1, numBins);
+        }
+    }
+
+    @Override
+    public void accept(int alphaIdx, int lambdaIdx, int iterationIndex, int[] aa, int[] ab, int[] r, int stopTime) {
+        CellStatistics stats = cells[alphaIdx * numLambda + lambdaIdx];
+        int finalSize = aa[maxTime] + ab[maxTime] + r[maxTime];
+        int bin = Math.min(numBins - 1, (int) ((long) finalSize * numBins / numVertices));
+        synchronized (stats) {
+            stats.count++;
+            for (int t = 0; t <= maxTime; t++) {
+                stats.aa.add(t, aa[t]);
+                stats.ab.add(t, ab[t]);
+                stats.r.add(t, r[t]);
+            }
+            stats.finalSizeHistogram[bin]++;
+            stats.stopTime.add(0, stopTime);
+        }
+    }
+
+    /**
+     * 集計結果を .npy で書き出す。
+     * <ul>
+     *   <li>aa_mean_[batch].npy, aa_var_[batch].npy など：形状 (α, λ, maxTime + 1), float64</li>
+     *   <li>final_size_hist_[batch].npy：形状 (α, λ, bins), int32。bin b は最終伝播規模 / N が [b/bins, (b+1)/bins)</li>
+     *   <li>bimodality_[batch].npy：形状 (α, λ), float64。5/9 を超えると二峰性の目安</li>
+     *   <li>stop_time_mean_[batch].npy, stop_time_var_[batch].npy：形状 (α, λ), float64。各回の止まった時刻の平均・分散</li>
+     * </ul>
+     */
+    @Override
+    public void close() throws IOException {
+        int timeLength = maxTime + 1;
+        int numCells = cells.length;
+        double[] aaMean = new double[numCells * timeLength];
+        double[] aaVariance = new double[numCells * timeLength];
+        double[] abMean = new double[numCells * timeLength];
+        double[] abVariance = new double[numCells * timeLength];
+        double[] rMean = new double[numCells * timeLength];
+        double[] rVariance = new double[numCells * timeLength];
+        int[] histogram = new int[numCells * numBins];
+        double[] bimodality = new double[numCells];
+        double[] stopTimeMean = new double[numCells];
+        double[] stopTimeVariance = new double[numCells];
+
+        for (int cell = 0; cell < numCells; cell++) {
+            CellStatistics stats = cells[cell];
+            for (int t = 0; t < timeLength; t++) {
+                int index = cell * timeLength + t;
+                aaMean[index] = stats.aa.mean(t, stats.count);
+                aaVariance[index] = stats.aa.variance(t, stats.count);
+                abMean[index] = stats.ab.mean(t, stats.count);
+                abVariance[index] = stats.ab.variance(t, stats.count);
+                rMean[index] = stats.r.mean(t, stats.count);
+                rVariance[index] = stats.r.variance(t, stats.count);
+            }
+            System.arraycopy(stats.finalSizeHistogram, 0, histogram, cell * numBins, numBins);
+            bimodality[cell] = bimodalityCoefficient(stats.finalSizeHistogram);
+            stopTimeMean[cell] = stats.stopTime.mean(0, stats.count);
+            stopTimeVariance[cell] = stats.stopTime.variance(0, stats.count);
+        }
+
+        int[] seriesShape = {numAlpha, numLambda, timeLength};
+        NpyArrayFile.writeDoubles(path("aa_mean"), aaMean, seriesShape);
+        NpyArrayFile.writeDoubles(path("aa_var"), aaVariance, seriesShape);
+        NpyArrayFile.writeDoubles(path("ab_mean"), abMean, seriesShape);
+        NpyArrayFile.writeDoubles(path("ab_var"), abVariance, seriesShape);
+        NpyArrayFile.writeDoubles(path("r_mean"), rMean, seriesShape);
+        NpyArrayFile.writeDoubles(path("r_var"), rVariance, seriesShape);
+        NpyArrayFile.writeInts(path("final_size_hist"), histogram, numAlpha, numLambda, numBins);
+        NpyArrayFile.writeDoubles(path("bimodality"), bimodality, numAlpha, numLambda);
+        NpyArrayFile.writeDoubles(path("stop_time_mean"), stopTimeMean, numAlpha, numLambda);
+        NpyArrayFile.writeDoubles(path("stop_time_var"), stopTimeVariance, numAlpha, numLambda);
+    }
+
+    private Path path(String baseName) {
+        return directory.resolve(NpyResultSink.fileName(baseName, batchNumber));
+    }
+
+    /**
+     * ヒストグラム（各 bin の中央値で代表）から二峰性係数
+     * (g² + 1) / (k + 3(n - 1)² / ((n - 2)(n - 3))) を求める。g は歪度、k は超過尖度。
+     */
+    static double bimodalityCoefficient(int[] histogram) {
+        int numBins = histogram.length;
+        long n = 0;
+        double sum = 0;
+        for (int bin = 0; bin < numBins; bin++) {
+            n += histogram[bin];
+            sum += histogram[bin] * (bin + 0.5) / numBins;
+        }
+        if (n <= 3) {
+            return Double.NaN;
+        }
+        double mean = sum / n;
+        double m2 = 0;
+        double m3 = 0;
+        double m4 = 0;
+        for (int bin = 0; bin < numBins; bin++) {
+            double d = (bin + 0.5) / numBins - mean;
+            double d2 = d * d;
+            m2 += histogram[bin] * d2;
+            m3 += histogram[bin] * d2 * d;
+            m4 += histogram[bin] * d2 * d2;
+        }
+        m2 /= n;
+        m3 /= n;
+        m4 /= n;
+        if (m2 == 0) {
+            return Double.NaN;
+        }
+        double skewness = m3 / Math.pow(m2, 1.5);
+        double excessKurtosis = m4 / (m2 * m2) - 3;
+        double correction = 3.0 * (n - 1) * (n - 1) / ((double) (n - 2) * (n - 3));
+        return (skewness * skewness + 1) / (excessKurtosis + correction);
+    }
+}
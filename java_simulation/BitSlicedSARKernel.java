@@ -0,0 +1,384 @@
+package java_simulation;
+
+import java.util.Arrays;
+
+import java_simulation.DiscreteTimeTrendEffectSARSimulation.Graph;
+
+/**
+ * 同じグラフ上の最大 64 回分のシミュレーションを、long の各ビットを 1 回分（レーン）として同時に実行するカーネル。
+ * <p>
+ * 頂点ごとに「活動家か」「未採用か」「採用中か」を 64 レーン分のビット平面で持ち、
+ * 伝達数もビットスライスした 2 進カウンタで持つ。隣接リストの走査は全レーンで 1 回だけ行い、
+ * 伝達の試行はそのエッジで試行が必要なレーンだけについてまとめて引く。
+ * 大きなグラフでは隣接リストの読み込みが支配的なので、1 回あたりのメモリトラフィックが大きく減る。
+ * <p>
+ * 各レーンの遷移規則は {@link SARStepKernel} と同じで、結果の分布も同じになる（乱数の消費順は異なる）。
+ * <ul>
+ *   <li>流行効果：レーンごとに全頂点を幾何スキップで試行し、未採用でない頂点への試行は捨てる</li>
+ *   <li>口コミ・回復：{@link #bernoulliMask} で、指定したレーンそれぞれに独立な Bernoulli 試行を行う</li>
+ *   <li>全員が採用したレーンと、{@link SARStepKernel#canChange} でこれ以上状態が変わらないレーンはそこで止め、
+ *       以降の時刻は最後の値を維持する</li>
+ * </ul>
+ */
+public class BitSlicedSARKernel {
+
+    /** 1 語で同時に実行できるレーン数 */
+    public static final int LANES = Long.SIZE;
+
+    /** double の仮数部のビット数（nextDouble() と同じ分解能で確率を比較する） */
+    private static final int PROBABILITY_BITS = 53;
+
+    private final SimulationConfig config;
+    private final int ta;
+    private final int tb;
+    private final int maxThreshold;
+    /** 伝達数カウンタのビット幅 */
+    private final int counterWidth;
+
+    private long[] activist = new long[0];
+    private long[] susceptible = new long[0];
+    private long[] adopted = new long[0];
+    /** このステップで採用に遷移するレーン */
+    private long[] pending = new long[0];
+    /** 伝達数カウンタ。頂点 v の第 k ビット平面は counters[v * counterWidth + k] */
+    private long[] counters = new long[0];
+    /** 有向エッジ edgeList[i] がこのランで既に伝達済みのレーン */
+    private long[] edgeDone = new long[0];
+
+    /** いずれかの有効レーンで採用中の頂点 */
+    private int[] frontier = new int[0];
+    private int[] nextFrontier = new int[0];
+    /** pending が 0 でない頂点 */
+    private int[] touched = new int[0];
+    /** 初期化用の頂点順列 */
+    private int[] nodeOrder = new int[0];
+
+    private final int[] adoptedA = new int[LANES];
+    private final int[] adoptedB = new int[LANES];
+    private final int[] recovered = new int[LANES];
+
+    private final KernelCounters kernelCounters = new KernelCounters();
+
+    public BitSlicedSARKernel(SimulationConfig config) {
+        this.config = config;
+        this.ta = config.ta;
+        this.tb = config.tb;
+        this.maxThreshold = Math.max(1, Math.max(ta, tb));
+        this.counterWidth = Integer.SIZE - Integer.numberOfLeadingZeros(maxThreshold);
+    }
+
+    /**
+     * lanes 回分のシミュレーションを同時に実行し、レーン l の時系列（時刻0～maxTime）を
+     * aaOut[l], abOut[l], rOut[l] に、止まった時刻を stopTimes[l] に書き込む。
+     */
+    public void run(Graph graph, double currentAlpha, double currentLambda, RandomStream random, int lanes,
+                    int[][] aaOut, int[][] abOut, int[][] rOut, int[] stopTimes) {
+        if (lanes < 1 || lanes > LANES) {
+            throw new IllegalArgumentException("lanes must be in [1, " + LANES + "]: " + lanes);
+        }
+        long startTime = System.nanoTime();
+        int numVertices = graph.addressList.length;
+        int maxTime = config.maxTime;
+        int[] edgeList = graph.edgeList;
+        int[] addressList = graph.addressList;
+        int[] cursor = graph.cursor;
+        ensureCapacity(numVertices, edgeList.length);
+
+        long laneMask = lanes == LANES ? -1L : (1L << lanes) - 1;
+        long[] activist = this.activist;
+        long[] susceptible = this.susceptible;
+        long[] adopted = this.adopted;
+        long[] edgeDone = this.edgeDone;
+        Arrays.fill(activist, 0, numVertices, 0L);
+        Arrays.fill(susceptible, 0, numVertices, laneMask);
+        Arrays.fill(adopted, 0, numVertices, 0L);
+        Arrays.fill(pending, 0, numVertices, 0L);
+        Arrays.fill(counters, 0, numVertices * counterWidth, 0L);
+        Arrays.fill(edgeDone, 0, edgeList.length, 0L);
+        Arrays.fill(adoptedA, 0);
+        Arrays.fill(adoptedB, 0);
+        Arrays.fill(recovered, 0);
+
+        // レーンごとに活動家と初期採用者を選ぶ
+        int numActivists = (int) (config.p * numVertices);
+        int initialAdopters = (int) (config.initialAdoptionRate * numVertices);
+        for (int v = 0; v < numVertices; v++) {
+            nodeOrder[v] = v;
+        }
+        int frontierSize = 0;
+        for (int lane = 0; lane < lanes; lane++) {
+            long bit = 1L << lane;
+            random.selectPrefix(nodeOrder, numVertices, numActivists);
+            for (int i = 0; i < numActivists; i++) {
+                activist[nodeOrder[i]] |= bit;
+            }
+            random.selectPrefix(nodeOrder, numVertices, initialAdopters);
+            for (int i = 0; i < initialAdopters; i++) {
+                int node = nodeOrder[i];
+                if (adopted[node] == 0) {
+                    frontier[frontierSize++] = node;
+                }
+                adopted[node] |= bit;
+                susceptible[node] &= ~bit;
+                if ((activist[node] & bit) != 0) {
+                    adoptedA[lane]++;
+                } else {
+                    adoptedB[lane]++;
+                }
+            }
+        }
+        record(laneMask, 0, aaOut, abOut, rOut);
+
+        long lambdaThreshold = probabilityThreshold(currentLambda);
+        long gammaThreshold = probabilityThreshold(config.gamma);
+        long active = activeLanes(laneMask, numVertices, currentAlpha, currentLambda);
+        Arrays.fill(stopTimes, 0, lanes, 0);
+        int timeStep = 0;
+        long loopStartTime = System.nanoTime();
+        long nodeUpdates = 0;
+        long edgeTraversals = 0;
+
+        while (timeStep < maxTime && active != 0) {
+            int numTouched = 0;
+
+            // 流行効果：レーンごとに全頂点を幾何スキップで試行する
+            if (currentAlpha > 0) {
+                for (long m = active; m != 0; m &= m - 1) {
+                    int lane = Long.numberOfTrailingZeros(m);
+                    long bit = 1L << lane;
+                    int totalAdopted = adoptedA[lane] + adoptedB[lane];
+                    double trendProbability = Math.min(1.0, currentAlpha * totalAdopted / numVertices);
+                    if (trendProbability <= 0) {
+                        continue;
+                    }
+                    double logComplement = Math.log1p(-trendProbability);
+                    long i = SARStepKernel.geometricSkip(random, logComplement);
+                    while (i < numVertices) {
+                        int node = (int) i;
+                        if ((susceptible[node] & bit) != 0) {
+                            numTouched = markPending(node, bit, numTouched);
+                        }
+                        nodeUpdates++;
+                        i += 1 + SARStepKernel.geometricSkip(random, logComplement);
+                    }
+                }
+            }
+
+            // 口コミによる情報拡散と回復（隣接リストは全レーンで共有して 1 回だけ走査）
+            int nextFrontierSize = 0;
+            nodeUpdates += frontierSize;
+            for (int f = 0; f < frontierSize; f++) {
+                int node = frontier[f];
+                long transmitting = adopted[node] & active;
+                edgeTraversals += cursor[node] - addressList[node];
+                for (int i = addressList[node]; i < cursor[node]; i++) {
+                    int neighbor = edgeList[i];
+                    long trials = transmitting & susceptible[neighbor] & ~edgeDone[i];
+                    if (trials == 0) {
+                        continue;
+                    }
+                    long success = bernoulliMask(random, lambdaThreshold, trials);
+                    if (success != 0) {
+                        edgeDone[i] |= success;
+                        numTouched = inform(neighbor, success, numTouched);
+                    }
+                }
+                // 採用状態から回復
+                long recovering = bernoulliMask(random, gammaThreshold, transmitting);
+                if (recovering != 0) {
+                    adopted[node] &= ~recovering;
+                    countLanes(recovering & activist[node], adoptedA, -1);
+                    countLanes(recovering & ~activist[node], adoptedB, -1);
+                    countLanes(recovering, recovered, 1);
+                }
+                if ((adopted[node] & active) != 0) {
+                    nextFrontier[nextFrontierSize++] = node;
+                }
+            }
+
+            // 状態更新
+            for (int t = 0; t < numTouched; t++) {
+                int node = touched[t];
+                long adopting = pending[node] & susceptible[node];
+                pending[node] = 0;
+                if (adopting == 0) {
+                    continue;
+                }
+                if ((adopted[node] & active) == 0) {
+                    nextFrontier[nextFrontierSize++] = node;
+                }
+                adopted[node] |= adopting;
+                susceptible[node] &= ~adopting;
+                countLanes(adopting & activist[node], adoptedA, 1);
+                countLanes(adopting & ~activist[node], adoptedB, 1);
+            }
+
+            int[] swap = frontier;
+            frontier = nextFrontier;
+            nextFrontier = swap;
+            frontierSize = nextFrontierSize;
+
+            // 次の時刻の記録。止まったレーンは止まった時刻を残し、採用中の頂点リストから外す
+            timeStep++;
+            record(active, timeStep, aaOut, abOut, rOut);
+            long stillActive = activeLanes(active, numVertices, currentAlpha, currentLambda);
+            if (stillActive != active) {
+                for (long m = active & ~stillActive; m != 0; m &= m - 1) {
+                    stopTimes[Long.numberOfTrailingZeros(m)] = timeStep;
+                }
+                active = stillActive;
+                int kept = 0;
+                for (int f = 0; f < frontierSize; f++) {
+                    if ((adopted[frontier[f]] & active) != 0) {
+                        frontier[kept++] = frontier[f];
+                    }
+                }
+                frontierSize = kept;
+            }
+        } // end timeStep loop
+
+        // 時刻がmaxTimeに達していない場合は、最後の時刻の値を維持
+        for (long m = active; m != 0; m &= m - 1) {
+            stopTimes[Long.numberOfTrailingZeros(m)] = timeStep;
+        }
+        for (int lane = 0; lane < lanes; lane++) {
+            int stop = stopTimes[lane];
+            Arrays.fill(aaOut[lane], stop + 1, maxTime + 1, aaOut[lane][stop]);
+            Arrays.fill(abOut[lane], stop + 1, maxTime + 1, abOut[lane][stop]);
+            Arrays.fill(rOut[lane], stop + 1, maxTime + 1, rOut[lane][stop]);
+        }
+        kernelCounters.set(startTime, loopStartTime, nodeUpdates, edgeTraversals);
+    }
+
+    /** 直前の {@link #run} の計測値（次の呼び出しで上書きされる） */
+    KernelCounters counters() {
+        return kernelCounters;
+    }
+
+    /** success のレーンで node への伝達を 1 つ数え、閾値に達したレーンを採用予定にする */
+    private int inform(int node, long success, int numTouched) {
+        long increment = success & ~atLeast(node, maxThreshold);
+        int base = node * counterWidth;
+        long carry = increment;
+        for (int k = 0; k < counterWidth && carry != 0; k++) {
+            long plane = counters[base + k];
+            counters[base + k] = plane ^ carry;
+            carry &= plane;
+        }
+        long reached = (activist[node] & atLeast(node, ta)) | (~activist[node] & atLeast(node, tb));
+        return markPending(node, reached & success & susceptible[node], numTouched);
+    }
+
+    /** 伝達数が threshold 以上のレーン（上位ビットから比較） */
+    private long atLeast(int node, int threshold) {
+        int base = node * counterWidth;
+        long greater = 0;
+        long equal = -1L;
+        for (int k = counterWidth - 1; k >= 0; k--) {
+            long plane = counters[base + k];
+            if (((threshold >>> k) & 1) != 0) {
+                equal &= plane;
+            } else {
+                greater |= equal & plane;
+                equal &= ~plane;
+            }
+        }
+        return greater | equal;
+    }
+
+    private int markPending(int node, long lanes, int numTouched) {
+        if (lanes == 0) {
+            return numTouched;
+        }
+        if (pending[node] == 0) {
+            touched[numTouched++] = node;
+        }
+        pending[node] |= lanes;
+        return numTouched;
+    }
+
+    /** lanes のうち、全員が採用しておらず、まだ状態が変わりうるレーン */
+    private long activeLanes(long lanes, int numVertices, double alpha, double lambda) {
+        long active = 0;
+        for (long m = lanes; m != 0; m &= m - 1) {
+            int lane = Long.numberOfTrailingZeros(m);
+            int totalAdopted = adoptedA[lane] + adoptedB[lane];
+            if (totalAdopted < numVertices && SARStepKernel.canChange(totalAdopted, alpha, lambda, config.gamma)) {
+                active |= 1L << lane;
+            }
+        }
+        return active;
+    }
+
+    /** lanes のレーンの時刻 t の値を記録する */
+    private void record(long lanes, int t, int[][] aaOut, int[][] abOut, int[][] rOut) {
+        for (long m = lanes; m != 0; m &= m - 1) {
+            int lane = Long.numberOfTrailingZeros(m);
+            aaOut[lane][t] = adoptedA[lane];
+            abOut[lane][t] = adoptedB[lane];
+            rOut[lane][t] = recovered[lane];
+        }
+    }
+
+    private static void countLanes(long lanes, int[] counts, int delta) {
+        for (long m = lanes; m != 0; m &= m - 1) {
+            counts[Long.numberOfTrailingZeros(m)] += delta;
+        }
+    }
+
+    /** nextDouble() &lt; probability と同じ判定を 53 ビットの整数比較で行うための閾値 ceil(probability × 2^53) */
+    static long probabilityThreshold(double probability) {
+        if (probability <= 0) {
+            return 0;
+        }
+        if (probability >= 1) {
+            return 1L << PROBABILITY_BITS;
+        }
+        return (long) Math.ceil(Math.scalb(probability, PROBABILITY_BITS));
+    }
+
+    /**
+     * lanes の各レーンで独立に 53 ビットの一様乱数 U を引き、U &lt; threshold となったレーンを返す。
+     * 上位ビットから 1 語ずつ全レーン分のビットを引いて比較し、大小が決まったレーンから抜けていくので、
+     * 引く語数はおよそ log2(レーン数) + 1 で済む。
+     */
+    static long bernoulliMask(RandomStream random, long threshold, long lanes) {
+        if (threshold <= 0 || lanes == 0) {
+            return 0;
+        }
+        if (threshold >= 1L << PROBABILITY_BITS) {
+            return lanes;
+        }
+        long result = 0;
+        long undecided = lanes;
+        int lowest = Long.numberOfTrailingZeros(threshold);
+        for (int j = PROBABILITY_BITS - 1; j >= lowest && undecided != 0; j--) {
+            long bits = random.nextLong();
+            if (((threshold >>> j) & 1) != 0) {
+                result |= undecided & ~bits;
+                undecided &= bits;
+            } else {
+                undecided &= ~bits;
+            }
+        }
+        return result;
+    }
+
+    /** グラフの大きさに合わせて作業配列を確保する（足りているときは再利用） */
+    private void ensureCapacity(int numVertices, int numEdgeSlots) {
+        if (activist.length < numVertices) {
+            activist = new long[numVertices];
+            susceptible = new long[numVertices];
+            adopted = new long[numVertices];
+            pending = new long[numVertices];
+            counters = new long[numVertices * counterWidth];
+            frontier = new int[numVertices];
+            nextFrontier = new int[numVertices];
+            touched = new int[numVertices];
+            nodeOrder = new int[numVertices];
+        }
+        if (edgeDone.length < numEdgeSlots) {
+            edgeDone = new long[numEdgeSlots];
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package java_simulation;
+
+import java.util.Arrays;
+
+/**
+ * 大規模ネットワーク用の SAR カーネル。
+ * <p>
+ * グラフは {@link OffHeapGraph}（メモリマップした CSR）から読み、ノードごとの状態・閾値の種類・伝達数を
+ * 1 バイトに詰める。伝達済みフラグは有向エッジあたり 1 ビット。
+ * 作業配列は 1 ノードあたり約 17 バイトと有向エッジあたり 1 ビットで、
+ * {@link SARStepKernel}（1 ノードあたり約 45 バイトと有向エッジあたり 4 バイト）の数分の 1 になる。
+ * <p>
+ * 乱数の消費順は {@link SARStepKernel} と同じにしてあるので、同じグラフ・同じ乱数ストリームなら
+ * 結果はビット単位で一致する。伝達数は 4 ビットで数えるため、閾値 ta, tb は 15 以下に限る。
+ */
+public class CompactSARKernel {
+
+    // 1 バイトの内訳：下位 3 ビットが状態、次の 1 ビットが活動家、上位 4 ビットが伝達数（15 で飽和）
+    private static final int STATE_MASK = 0x07;
+    /** 未採用のまま、このステップの採用予定に積まれた状態（{@link SARStepKernel} の adoptStamp に当たる） */
+    private static final int PENDING = 5;
+    private static final int ACTIVIST = 0x08;
+    private static final int COUNT_SHIFT = 4;
+    private static final int COUNT_UNIT = 1 << COUNT_SHIFT;
+    /** 伝達数が取りうる最大値 */
+    static final int MAX_THRESHOLD = 0xFF >>> COUNT_SHIFT;
+
+    /** 一様乱数をまとめて引く単位 */
+    private static final int CHUNK = 4096;
+
+    private final SimulationConfig config;
+    private final boolean skipSampling;
+
+    private byte[] nodes = new byte[0];
+    /** 有向エッジ edgeList[i] がこのランで既に伝達済みならビット i が立つ */
+    private long[] edgeInformed = new long[0];
+    /** 回復するフロンティア内の位置にビットが立つ */
+    private long[] recovers = new long[0];
+
+    /** 未採用者リストと各ノードのリスト内位置（swap-remove 用） */
+    private int[] susceptibleList = new int[0];
+    private int[] susceptiblePosition = new int[0];
+    private int numSusceptible;
+
+    /**
+     * 現在の採用者フロンティアと次ステップ用のバッファ。
+     * 次ステップ用のバッファには、前から回復しなかったノードを、後ろから逆順にこのステップの採用予定を積む
+     * （フロンティアと未採用者は重ならないので、合わせても N を超えない）。
+     * 初期化では頂点順列の作業領域にも使う。
+     */
+    private int[] frontier = new int[0];
+    private int[] nextFrontier = new int[0];
+
+    private final double[] uniforms = new double[CHUNK];
+
+    private final KernelCounters counters = new KernelCounters();
+
+    public CompactSARKernel(SimulationConfig config) {
+        if (config.ta > MAX_THRESHOLD || config.tb > MAX_THRESHOLD) {
+            throw new IllegalArgumentException("CompactSARKernel supports thresholds up to " + MAX_THRESHOLD
+                    + ": ta=" + config.ta + ", tb=" + config.tb);
+        }
+        this.config = config;
+        this.skipSampling = config.samplingMode == SimulationConfig.SamplingMode.SKIP;
+    }
+
+    /**
+     * 与えられたグラフ上で 1 回分のシミュレーションを実行し、
+     * 活動家・偏屈家の採用者数と回復者数の時系列（時刻0～maxTime）を出力配列に書き込む。
+     * 全員が採用するか、{@link SARStepKernel#canChange} でこれ以上状態が変わらないと分かった時刻で止め、
+     * 残りの時刻は最後の値で埋める。
+     *
+     * @return 止まった時刻（maxTime まで進んだときは maxTime）
+     */
+    public int run(OffHeapGraph graph, double currentAlpha, double currentLambda, RandomStream random,
+                    int[] aaOut, int[] abOut, int[] rOut) {
+        long startTime = System.nanoTime();
+        int numVertices = graph.numVertices();
+        int maxTime = config.maxTime;
+        double gamma = config.gamma;
+        ensureCapacity(numVertices, graph.numEdgeSlots());
+        Arrays.fill(edgeInformed, 0, words(graph.numEdgeSlots()), 0L);
+
+        int activistThreshold = config.ta;
+        int bigotThreshold = config.tb;
+        byte[] nodes = this.nodes;
+
+        // アクティビストの選出（確率p）。頂点順列は nextFrontier を作業領域にする
+        Arrays.fill(nodes, 0, numVertices, SARStepKernel.SUSCEPTIBLE);
+        int[] nodeOrder = nextFrontier;
+        int numActivists = (int) (config.p * numVertices);
+        for (int v = 0; v < numVertices; v++) {
+            nodeOrder[v] = v;
+        }
+        random.selectPrefix(nodeOrder, numVertices, numActivists);
+        for (int i = 0; i < numActivists; i++) {
+            nodes[nodeOrder[i]] |= ACTIVIST;
+        }
+
+        numSusceptible = numVertices;
+        for (int v = 0; v < numVertices; v++) {
+            susceptibleList[v] = v;
+            susceptiblePosition[v] = v;
+        }
+
+        // 初期採用者の設定（初期採用率に基づきランダム選出）
+        int currentAdoptedA = 0;
+        int currentAdoptedB = 0;
+        int frontierSize = 0;
+        int initialAdopters = (int) (config.initialAdoptionRate * numVertices);
+        random.selectPrefix(nodeOrder, numVertices, initialAdopters);
+        for (int i = 0; i < initialAdopters; i++) {
+            int node = nodeOrder[i];
+            if (adoptsAsA(node, activistThreshold, bigotThreshold)) {
+                setState(node, SARStepKernel.ADOPTED_A);
+                currentAdoptedA++;
+            } else {
+                setState(node, SARStepKernel.ADOPTED_B);
+                currentAdoptedB++;
+            }
+            removeSusceptible(node);
+            frontier[frontierSize++] = node;
+        }
+
+        int recoveredA = 0;
+        int recoveredB = 0;
+        aaOut[0] = currentAdoptedA;
+        abOut[0] = currentAdoptedB;
+        rOut[0] = 0;
+
+        int timeStep = 0;
+        int totalAdopted = currentAdoptedA + currentAdoptedB;
+        long loopStartTime = System.nanoTime();
+        long nodeUpdates = 0;
+        long edgeTraversals = 0;
+
+        while (timeStep < maxTime && totalAdopted < numVertices
+                && SARStepKernel.canChange(totalAdopted, currentAlpha, currentLambda, gamma)) {
+            int numToAdopt = 0;
+
+            // 流行効果（未採用者のみ走査）
+            double trendProbability = currentAlpha * totalAdopted / numVertices;
+            if (trendProbability > 0) {
+                if (skipSampling && trendProbability < SARStepKernel.SKIP_SAMPLING_THRESHOLD) {
+                    double logComplement = Math.log1p(-trendProbability);
+                    long i = SARStepKernel.geometricSkip(random, logComplement);
+                    while (i < numSusceptible) {
+                        numToAdopt = schedule(susceptibleList[(int) i], numVertices, numToAdopt);
+                        i += 1 + SARStepKernel.geometricSkip(random, logComplement);
+                    }
+                    nodeUpdates += numToAdopt;
+                } else {
+                    for (int base = 0; base < numSusceptible; base += CHUNK) {
+                        int length = Math.min(CHUNK, numSusceptible - base);
+                        random.nextDoubles(uniforms, 0, length);
+                        for (int k = 0; k < length; k++) {
+                            if (uniforms[k] < trendProbability) {
+                                numToAdopt = schedule(susceptibleList[base + k], numVertices, numToAdopt);
+                            }
+                        }
+                    }
+                    nodeUpdates += numSusceptible;
+                }
+            }
+
+            // 口コミによる情報拡散と回復（採用者フロンティアのみ走査）
+            int nextFrontierSize = 0;
+            int newlyRecoveredA = 0;
+            int newlyRecoveredB = 0;
+            boolean skipTransmission = skipSampling && currentLambda < SARStepKernel.SKIP_SAMPLING_THRESHOLD;
+            double lambdaLogComplement = Math.log1p(-currentLambda);
+            long transmissionGap = skipTransmission ? SARStepKernel.geometricSkip(random, lambdaLogComplement) : 0;
+            nodeUpdates += frontierSize;
+            // 回復の判定はフロンティア分を先にまとめて引き、1 ビットずつ持つ
+            for (int base = 0; base < frontierSize; base += CHUNK) {
+                int length = Math.min(CHUNK, frontierSize - base);
+                random.nextDoubles(uniforms, 0, length);
+                for (int k = 0; k < length; k++) {
+                    int f = base + k;
+                    if (uniforms[k] < gamma) {
+                        recovers[f >>> 6] |= 1L << f;
+                    } else {
+                        recovers[f >>> 6] &= ~(1L << f);
+                    }
+                }
+            }
+            for (int f = 0; f < frontierSize; f++) {
+                int node = frontier[f];
+                int end = graph.end(node);
+                if (skipTransmission) {
+                    long i = graph.start(node) + transmissionGap;
+                    while (i < end) {
+                        int neighbor = graph.neighbor((int) i);
+                        if (isSusceptible(neighbor)) {
+                            numToAdopt = inform((int) i, neighbor, numVertices, numToAdopt,
+                                    activistThreshold, bigotThreshold);
+                        }
+                        edgeTraversals++;
+                        i += 1 + SARStepKernel.geometricSkip(random, lambdaLogComplement);
+                    }
+                    transmissionGap = i - end;
+                } else {
+                    int start = graph.start(node);
+                    edgeTraversals += end - start;
+                    for (int i = start; i < end; i++) {
+                        int neighbor = graph.neighbor(i);
+                        if (isSusceptible(neighbor) && random.nextDouble() < currentLambda) {
+                            numToAdopt = inform(i, neighbor, numVertices, numToAdopt,
+                                    activistThreshold, bigotThreshold);
+                        }
+                    }
+                }
+                // 採用状態から回復
+                if ((recovers[f >>> 6] & (1L << f)) != 0) {
+                    if ((nodes[node] & STATE_MASK) == SARStepKernel.ADOPTED_A) {
+                        setState(node, SARStepKernel.RECOVERED_A);
+                        newlyRecoveredA++;
+                    } else {
+                        setState(node, SARStepKernel.RECOVERED_B);
+                        newlyRecoveredB++;
+                    }
+                } else {
+                    nextFrontier[nextFrontierSize++] = node;
+                }
+            }
+
+            // 状態更新：後ろに逆順で積んだ採用予定を、回復しなかったノードの後ろへ採用順に並べ直す
+            int[] next = nextFrontier;
+            for (int lo = numVertices - numToAdopt, hi = numVertices - 1; lo < hi; lo++, hi--) {
+                int tmp = next[lo];
+                next[lo] = next[hi];
+                next[hi] = tmp;
+            }
+            System.arraycopy(next, numVertices - numToAdopt, next, nextFrontierSize, numToAdopt);
+            for (int i = nextFrontierSize; i < nextFrontierSize + numToAdopt; i++) {
+                int node = next[i];
+                if (adoptsAsA(node, activistThreshold, bigotThreshold)) {
+                    setState(node, SARStepKernel.ADOPTED_A);
+                    currentAdoptedA++;
+                } else {
+                    setState(node, SARStepKernel.ADOPTED_B);
+                    currentAdoptedB++;
+                }
+                removeSusceptible(node);
+            }
+            nextFrontierSize += numToAdopt;
+            currentAdoptedA -= newlyRecoveredA;
+            currentAdoptedB -= newlyRecoveredB;
+            recoveredA += newlyRecoveredA;
+            recoveredB += newlyRecoveredB;
+
+            int[] swap = frontier;
+            frontier = nextFrontier;
+            nextFrontier = swap;
+            frontierSize = nextFrontierSize;
+
+            // 次の時刻の記録
+            timeStep++;
+            aaOut[timeStep] = currentAdoptedA;
+            abOut[timeStep] = currentAdoptedB;
+            rOut[timeStep] = recoveredA + recoveredB;
+            totalAdopted = currentAdoptedA + currentAdoptedB;
+        } // end timeStep loop
+
+        // 時刻がmaxTimeに達していない場合は、最後の時刻の値を維持
+        Arrays.fill(aaOut, timeStep + 1, maxTime + 1, aaOut[timeStep]);
+        Arrays.fill(abOut, timeStep + 1, maxTime + 1, abOut[timeStep]);
+        Arrays.fill(rOut, timeStep + 1, maxTime + 1, rOut[timeStep]);
+        counters.set(startTime, loopStartTime, nodeUpdates, edgeTraversals);
+        return timeStep;
+    }
+
+    /** 直前の {@link #run} の計測値（次の呼び出しで上書きされる） */
+    KernelCounters counters() {
+        return counters;
+    }
+
+    /**
+     * 有向エッジ edgeList[edgeIndex] を通じた伝達を記録し、閾値に達したら採用予定に積む。
+     * 同じ隣接ノードからの 2 回目以降の伝達は数えない。
+     *
+     * @return 更新後の採用予定数
+     */
+    private int inform(int edgeIndex, int neighbor, int numVertices, int numToAdopt,
+                       int activistThreshold, int bigotThreshold) {
+        int packed = nodes[neighbor] & 0xFF;
+        long bit = 1L << edgeIndex;
+        if ((edgeInformed[edgeIndex >>> 6] & bit) == 0) {
+            edgeInformed[edgeIndex >>> 6] |= bit;
+            if ((packed >>> COUNT_SHIFT) < MAX_THRESHOLD) {
+                packed += COUNT_UNIT;
+                nodes[neighbor] = (byte) packed;
+            }
+        }
+        int threshold = (packed & ACTIVIST) != 0 ? activistThreshold : bigotThreshold;
+        if ((packed >>> COUNT_SHIFT) >= threshold && (packed & STATE_MASK) != PENDING) {
+            numToAdopt = schedule(neighbor, numVertices, numToAdopt);
+        }
+        return numToAdopt;
+    }
+
+    /** 未採用の node をこのステップの採用予定に積む（nextFrontier の後ろから） */
+    private int schedule(int node, int numVertices, int numToAdopt) {
+        setState(node, PENDING);
+        nextFrontier[numVertices - 1 - numToAdopt] = node;
+        return numToAdopt + 1;
+    }
+
+    /** 未採用（採用予定に積まれたものを含む）か */
+    private boolean isSusceptible(int node) {
+        int state = nodes[node] & STATE_MASK;
+        return state == SARStepKernel.SUSCEPTIBLE || state == PENDING;
+    }
+
+    /** 採用したら A として数えるか（{@link SARStepKernel} と同じく閾値が ta のノードを A とするので、ta = tb なら全員） */
+    private boolean adoptsAsA(int node, int activistThreshold, int bigotThreshold) {
+        return (nodes[node] & ACTIVIST) != 0 || activistThreshold == bigotThreshold;
+    }
+
+    private void setState(int node, int state) {
+        nodes[node] = (byte) ((nodes[node] & ~STATE_MASK) | state);
+    }
+
+    /** 未採用者リストから node を取り除く */
+    private void removeSusceptible(int node) {
+        int position = susceptiblePosition[node];
+        int last = susceptibleList[--numSusceptible];
+        susceptibleList[position] = last;
+        susceptiblePosition[last] = position;
+    }
+
+    /** グラフの大きさに合わせて作業配列を確保する（足りているときは再利用） */
+    private void ensureCapacity(int numVertices, int numEdgeSlots) {
+        if (nodes.length < numVertices) {
+            nodes = new byte[numVertices];
+            recovers = new long[words(numVertices)];
+            susceptibleList = new int[numVertices];
+            susceptiblePosition = new int[numVertices];
+            frontier = new int[numVertices];
+            nextFrontier = new int[numVertices];
+        }
+        if (edgeInformed.length < words(numEdgeSlots)) {
+            edgeInformed = new long[words(numEdgeSlots)];
+        }
+    }
+
+    /** bits ビットを入れるのに要る long の数 */
+    private static int words(int bits) {
+        return (int) ((bits + 63L) >>> 6);
+    }
+}
@@ -0,0 +1,105 @@
+package java_simulation;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+import java_simulation.DiscreteTimeTrendEffectSARSimulation.Graph;
+
+/**
+ * 無向エッジ列から CSR 形式の {@link Graph} を組み立てる。
+ * <p>
+ * 1 パス目で次数を数えて addressList を作り、2 パス目で edgeList に書き込む。
+ * 頂点数が {@link #PARALLEL_THRESHOLD} 以上なら両パスを並列に実行する。
+ * 書き込み順はスレッドの実行順に依存するため、最後に各隣接リストを昇順に並べ替えて
+ * 逐次・並列のどちらでも同じグラフになるようにする。
+ * <p>
+ * 構築と同時に {@link UnionFind} で連結成分数を数えて {@link Graph#componentCount} に入れるので、
+ * 連結性の判定に別途グラフを探索する必要はない。
+ */
+final class CsrBuilder {
+
+    /** これ以上の頂点数なら並列に構築する */
+    static final int PARALLEL_THRESHOLD = 1 << 20;
+
+    private CsrBuilder() {
+    }
+
+    /**
+     * @param numVertices 頂点数
+     * @param endpoints   エッジ e の端点を endpoints[2e], endpoints[2e + 1] に持つ配列
+     * @param edgeCount   エッジ数
+     */
+    static Graph build(int numVertices, int[] endpoints, int edgeCount) {
+        if (numVertices >= PARALLEL_THRESHOLD) {
+            Graph graph = buildParallel(numVertices, endpoints, edgeCount);
+            graph.componentCount = countComponents(numVertices, endpoints, edgeCount);
+            return graph;
+        }
+        int[] vertexDegrees = new int[numVertices];
+        UnionFind components = new UnionFind(numVertices);
+        for (int edgeIndex = 0; edgeIndex < edgeCount; edgeIndex++) {
+            int u = endpoints[2 * edgeIndex];
+            int v = endpoints[2 * edgeIndex + 1];
+            vertexDegrees[u]++;
+            vertexDegrees[v]++;
+            components.union(u, v);
+        }
+        int[] addressList = new int[numVertices];
+        int[] cursor = new int[numVertices];
+        for (int vertex = 0; vertex < numVertices - 1; vertex++) {
+            addressList[vertex + 1] = addressList[vertex] + vertexDegrees[vertex];
+        }
+        System.arraycopy(addressList, 0, cursor, 0, numVertices);
+
+        int[] edgeList = new int[2 * edgeCount];
+        for (int edgeIndex = 0; edgeIndex < edgeCount; edgeIndex++) {
+            int u = endpoints[2 * edgeIndex];
+            int v = endpoints[2 * edgeIndex + 1];
+            edgeList[cursor[u]++] = v;
+            edgeList[cursor[v]++] = u;
+        }
+        for (int vertex = 0; vertex < numVertices; vertex++) {
+            Arrays.sort(edgeList, addressList[vertex], cursor[vertex]);
+        }
+        Graph graph = new Graph(edgeList, addressList, cursor);
+        graph.componentCount = components.componentCount();
+        return graph;
+    }
+
+    private static int countComponents(int numVertices, int[] endpoints, int edgeCount) {
+        UnionFind components = new UnionFind(numVertices);
+        for (int edgeIndex = 0; edgeIndex < edgeCount; edgeIndex++) {
+            components.union(endpoints[2 * edgeIndex], endpoints[2 * edgeIndex + 1]);
+        }
+        return components.componentCount();
+    }
+
+    private static Graph buildParallel(int numVertices, int[] endpoints, int edgeCount) {
+        // 1 パス目：次数
+        AtomicIntegerArray degrees = new AtomicIntegerArray(numVertices);
+        IntStream.range(0, 2 * edgeCount).parallel().forEach(i -> degrees.getAndIncrement(endpoints[i]));
+
+        int[] addressList = new int[numVertices];
+        for (int vertex = 0; vertex < numVertices - 1; vertex++) {
+            addressList[vertex + 1] = addressList[vertex] + degrees.get(vertex);
+        }
+
+        // 2 パス目：各頂点の書き込み位置をアトミックに進めながら配置
+        AtomicIntegerArray fill = new AtomicIntegerArray(addressList);
+        int[] edgeList = new int[2 * edgeCount];
+        IntStream.range(0, edgeCount).parallel().forEach(edgeIndex -> {
+            int u = endpoints[2 * edgeIndex];
+            int v = endpoints[2 * edgeIndex + 1];
+            edgeList[fill.getAndIncrement(u)] = v;
+            edgeList[fill.getAndIncrement(v)] = u;
+        });
+
+        int[] cursor = new int[numVertices];
+        IntStream.range(0, numVertices).parallel().forEach(vertex -> {
+            cursor[vertex] = fill.get(vertex);
+            Arrays.sort(edgeList, addressList[vertex], cursor[vertex]);
+        });
+        return new Graph(edgeList, addressList, cursor);
+    }
+}
@@ -0,0 +1,181 @@
+package java_simulation;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * 配置モデルで使う次数分布 p_k（k = 0 … kmax）。
+ * 次数の抽出は累積分布の二分探索で行う。
+ * {@link #exactSequence} で作ったものは、次数を抽出せずに与えた次数列そのものを配置モデルでつなぐ。
+ */
+public class DegreeDistribution {
+
+    private final String description;
+    private final double[] pk;
+    private final double[] cumulative;
+    /** 配置モデルでそのまま使う次数列。null なら次数を p_k から独立に抽出する */
+    private final int[] sequence;
+
+    private DegreeDistribution(String description, double[] weights) {
+        this(description, weights, false, null);
+    }
+
+    /**
+     * @param hashed   true なら正規化した p_k のハッシュを説明に付ける（パラメータで決まらない分布を
+     *                 グラフ集合のファイル名で区別するため）
+     * @param sequence 配置モデルでそのまま使う次数列（null なら抽出する）
+     */
+    private DegreeDistribution(String description, double[] weights, boolean hashed, int[] sequence) {
+        double total = 0;
+        for (double weight : weights) {
+            if (weight < 0 || Double.isNaN(weight)) {
+                throw new IllegalArgumentException("negative or NaN weight in degree distribution: " + description);
+            }
+            total += weight;
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("empty degree distribution: " + description);
+        }
+        this.pk = new double[weights.length];
+        this.cumulative = new double[weights.length];
+        double running = 0;
+        for (int k = 0; k < weights.length; k++) {
+            pk[k] = weights[k] / total;
+            running += pk[k];
+            cumulative[k] = running;
+        }
+        cumulative[weights.length - 1] = 1.0;
+        this.description = hashed
+                ? String.format(Locale.ROOT, "%s-%08x", description, Arrays.hashCode(pk))
+                : description;
+        this.sequence = sequence;
+    }
+
+    /** pk[k] ∝ weights[k] の分布（正規化は自動で行う） */
+    public static DegreeDistribution fromPk(double[] weights) {
+        return new DegreeDistribution("pk", weights.clone(), true, null);
+    }
+
+    /**
+     * 次数列の経験分布。配置モデルでは各頂点の次数をこの分布から独立に抽出し直すので、
+     * 与えた次数列そのものにはならない（そのまま使うときは {@link #exactSequence}）。
+     */
+    public static DegreeDistribution fromDegreeSequence(int[] degrees) {
+        return new DegreeDistribution("sequence", histogram(degrees), true, null);
+    }
+
+    /**
+     * 配置モデルで次数列 degrees をそのままつなぐ分布（numVertices は degrees.length と同じにする）。
+     * 次数の総和が奇数なら、次数が最大の頂点のうち最後のものの次数を 1 減らす。
+     * 自己ループと多重エッジは取り除くので、生成したグラフの次数はこれ以下になることがある。
+     */
+    public static DegreeDistribution exactSequence(int[] degrees) {
+        int[] sequence = degrees.clone();
+        long stubCount = 0;
+        int largest = 0;
+        for (int vertex = 0; vertex < sequence.length; vertex++) {
+            if (sequence[vertex] < 0) {
+                throw new IllegalArgumentException("negative degree at vertex " + vertex);
+            }
+            stubCount += sequence[vertex];
+            if (sequence[vertex] >= sequence[largest]) {
+                largest = vertex;
+            }
+        }
+        if ((stubCount & 1) != 0) {
+            sequence[largest]--;
+        }
+        String description = String.format(Locale.ROOT, "exact-%d-%08x", sequence.length, Arrays.hashCode(sequence));
+        return new DegreeDistribution(description, histogram(sequence), false, sequence);
+    }
+
+    private static double[] histogram(int[] degrees) {
+        int maxDegree = 0;
+        for (int degree : degrees) {
+            maxDegree = Math.max(maxDegree, degree);
+        }
+        double[] weights = new double[maxDegree + 1];
+        for (int degree : degrees) {
+            weights[degree]++;
+        }
+        return weights;
+    }
+
+    /** すべての頂点の次数が k の正則グラフ */
+    public static DegreeDistribution regular(int k) {
+        double[] weights = new double[k + 1];
+        weights[k] = 1;
+        return new DegreeDistribution("regular-" + k, weights);
+    }
+
+    /** 確率 fraction で次数 k1、残りは次数 k2 */
+    public static DegreeDistribution bimodal(int k1, int k2, double fraction) {
+        double[] weights = new double[Math.max(k1, k2) + 1];
+        weights[k1] += fraction;
+        weights[k2] += 1 - fraction;
+        return new DegreeDistribution(String.format(Locale.ROOT, "bimodal-%d-%d-%s", k1, k2, fraction), weights);
+    }
+
+    /** p_k ∝ k^(-exponent)（minDegree ≤ k ≤ maxDegree） */
+    public static DegreeDistribution powerLaw(double exponent, int minDegree, int maxDegree) {
+        double[] weights = new double[maxDegree + 1];
+        for (int k = Math.max(1, minDegree); k <= maxDegree; k++) {
+            weights[k] = Math.pow(k, -exponent);
+        }
+        return new DegreeDistribution(
+                String.format(Locale.ROOT, "powerlaw-%s-%d-%d", exponent, minDegree, maxDegree), weights);
+    }
+
+    /** 平均 mean のポアソン分布を maxDegree で打ち切ったもの */
+    public static DegreeDistribution poisson(double mean, int maxDegree) {
+        double[] weights = new double[maxDegree + 1];
+        double logMean = Math.log(mean);
+        double logFactorial = 0;
+        for (int k = 0; k <= maxDegree; k++) {
+            if (k > 0) {
+                logFactorial += Math.log(k);
+            }
+            weights[k] = Math.exp(k * logMean - mean - logFactorial);
+        }
+        return new DegreeDistribution(String.format(Locale.ROOT, "poisson-%s-%d", mean, maxDegree), weights);
+    }
+
+    /** cumulative[k] > u となる最小の k を返す */
+    public int sample(RandomStream random) {
+        double u = random.nextDouble();
+        int low = 0;
+        int high = cumulative.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cumulative[mid] > u) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    public double mean() {
+        double mean = 0;
+        for (int k = 0; k < pk.length; k++) {
+            mean += k * pk[k];
+        }
+        return mean;
+    }
+
+    public double[] pk() {
+        return pk.clone();
+    }
+
+    /** 配置モデルでそのまま使う次数列（{@link #exactSequence} 以外では null） */
+    int[] sequence() {
+        return sequence == null ? null : sequence.clone();
+    }
+
+    /** ファイル名やパラメータ出力に使う短い説明 */
+    @Override
+    public String toString() {
+        return description;
+    }
+}
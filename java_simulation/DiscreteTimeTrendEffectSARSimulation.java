@@ -3,15 +3,23 @@ package java_simulation;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 
 public class DiscreteTimeTrendEffectSARSimulation {
 
+    /** 出力先ディレクトリ */
+    static final String RESULTS_DIR = "simulation_results";
+
     /** 内部クラス：グラフ情報を保持する */
     public static class Graph {
         public int[] edgeList;
         public int[] addressList;
         public int[] cursor;
+        /** 連結成分数（孤立頂点も 1 つと数える）。-1 は未計算 */
+        public int componentCount = -1;
 
         public Graph(int[] edgeList, int[] addressList, int[] cursor) {
             this.edgeList = edgeList;
@@ -20,99 +28,169 @@ public class DiscreteTimeTrendEffectSARSimulation {
         }
     }
 
+    /** ER グラフ生成で使うエッジ重複判定用の集合（スレッドごとに使い回す） */
+    private static final ThreadLocal<LongOpenHashSet> SELECTED_EDGES = ThreadLocal.withInitial(LongOpenHashSet::new);
+
     /**
      * ER(エルデシュ・レーニ)グラフを生成する。
+     * 頂点数 numVertices・エッジ数 numVertices * averageDegree / 2 の G(n, m) を一様に選ぶ。
      */
-    private static Graph generateErdosRenyiGraph(Random random, int numVertices, double averageDegree) {
-        int maxEdges = (int) Math.floor(numVertices * averageDegree);
-        int[] rawEdgeList = new int[2 * maxEdges];
-        Arrays.fill(rawEdgeList, -1);
-        int[] vertexDegrees = new int[numVertices];
-        int edgeCount = 0;
+    static Graph generateErdosRenyiGraph(RandomStream random, int numVertices, double averageDegree) {
+        int m = (int) (numVertices * averageDegree / 2);
+        if (m > (long) numVertices * (numVertices - 1) / 2) {
+            throw new IllegalArgumentException("averageDegree is too large for numVertices: " + averageDegree);
+        }
+        int[] endpoints = new int[2 * m];
 
         // 重複エッジと自己ループを避けながらエッジをランダムに選択
-        Set<String> selectedEdges = new HashSet<>();
-        int m = (int) (numVertices * averageDegree / 2);
-        while (selectedEdges.size() < m) {
+        // エッジ (u, v), u < v は (u << 32) | v の long に詰めて重複判定する
+        LongOpenHashSet selectedEdges = SELECTED_EDGES.get();
+        selectedEdges.reset(m);
+        int edgeCount = 0;
+        while (edgeCount < m) {
             int u = random.nextInt(numVertices);
             int v = random.nextInt(numVertices);
             if (u == v) continue;  // 自己ループ除外
 
-            String edgeKey = (u < v) ? u + "-" + v : v + "-" + u;
-            if (!selectedEdges.contains(edgeKey)) {
-                selectedEdges.add(edgeKey);
-                rawEdgeList[2 * edgeCount] = u;
-                rawEdgeList[2 * edgeCount + 1] = v;
-                vertexDegrees[u]++;
-                vertexDegrees[v]++;
+            long edgeKey = (u < v) ? ((long) u << 32) | v : ((long) v << 32) | u;
+            if (selectedEdges.add(edgeKey)) {
+                endpoints[2 * edgeCount] = u;
+                endpoints[2 * edgeCount + 1] = v;
                 edgeCount++;
             }
         }
 
-        rawEdgeList = Arrays.stream(rawEdgeList).filter(x -> x != -1).toArray();
+        return CsrBuilder.build(numVertices, endpoints, edgeCount);
+    }
 
-        int[] addressList = new int[numVertices];
-        int[] cursor = new int[numVertices];
-        for (int vertex = 0; vertex < numVertices - 1; vertex++) {
-            addressList[vertex + 1] = addressList[vertex] + vertexDegrees[vertex];
-            cursor[vertex + 1] = cursor[vertex] + vertexDegrees[vertex];
-        }
+    /** 連結グラフが得られるまでの生成回数の上限 */
+    private static final int MAX_GRAPH_ATTEMPTS = 1000;
 
-        int[] edgeList = new int[2 * edgeCount];
-        for (int edgeIndex = 0; edgeIndex < edgeCount; edgeIndex++) {
-            int u = rawEdgeList[2 * edgeIndex];
-            int v = rawEdgeList[2 * edgeIndex + 1];
-            int smaller = Math.min(u, v);
-            int larger = Math.max(u, v);
-            edgeList[cursor[smaller]] = larger;
-            edgeList[cursor[larger]] = smaller;
-            cursor[smaller]++;
-            cursor[larger]++;
-        }
+    /**
+     * 設定に従ってグラフを生成する。連結でなければ {@link #ensureConnected} に従い、
+     * REJECT なら連結グラフが得られるまで生成し直す。
+     * ファイルから読み込むグラフは毎回同じなので 1 回だけ試す。
+     */
+    static Graph generateConnectedGraph(RandomStream random, SimulationConfig config) {
+        return generateConnectedGraph(random, config, new SweepMetrics());
+    }
 
-        return new Graph(edgeList, addressList, cursor);
+    /** 生成と連結性の判定にかかった時間を metrics の GRAPH と CONNECTIVITY に足す */
+    static Graph generateConnectedGraph(RandomStream random, SimulationConfig config, SweepMetrics metrics) {
+        int maxAttempts = NetworkFactory.FILE.equals(config.graphType) ? 1 : MAX_GRAPH_ATTEMPTS;
+        for (int attempt = 0; attempt < maxAttempts; attempt++) {
+            long startTime = System.nanoTime();
+            Graph generated = NetworkFactory.generate(random, config);
+            long checkTime = metrics.stop(SweepMetrics.Phase.GRAPH, startTime);
+            Graph graph = ensureConnected(generated, config);
+            metrics.stop(SweepMetrics.Phase.CONNECTIVITY, checkTime);
+            if (graph != null) {
+                return graph;
+            }
+        }
+        throw new IllegalStateException("no connected graph after " + maxAttempts + " attempts: "
+                + config.networkDescription());
     }
 
     /**
-     * 幅優先探索（BFS）によりグラフが連結かどうか判定
+     * 連結なグラフはそのまま返す。連結でなければ、LARGEST_COMPONENT では最大連結成分を、
+     * REJECT では null を返す。
      */
-    private static boolean checkGraphConnectivity(Graph graph, int numVertices) {
-        boolean[] visited = new boolean[numVertices];
-        Queue<Integer> queue = new LinkedList<>();
-        int startVertex = -1;
-        for (int i = 0; i < numVertices; i++) {
-            if (graph.cursor[i] - graph.addressList[i] > 0) {
-                startVertex = i;
-                break;
-            }
+    static Graph ensureConnected(Graph graph, SimulationConfig config) {
+        if (checkGraphConnectivity(graph, graph.addressList.length)) {
+            return graph;
+        }
+        if (config.connectivityMode == SimulationConfig.ConnectivityMode.LARGEST_COMPONENT) {
+            return largestConnectedComponent(graph);
         }
-        if (startVertex == -1) {
+        return null;
+    }
+
+    /**
+     * グラフが連結かどうか判定する。
+     * 構築時に数えた連結成分数があればそれを使い、無ければ（ファイルから読み込んだグラフなど）
+     * {@link UnionFind} で数え直す。
+     */
+    static boolean checkGraphConnectivity(Graph graph, int numVertices) {
+        if (numVertices == 0) {
             return false;
         }
-        visited[startVertex] = true;
-        queue.add(startVertex);
-        int visitedCount = 1;
-        while (!queue.isEmpty()) {
-            int current = queue.poll();
-            for (int i = graph.addressList[current]; i < graph.cursor[current]; i++) {
+        int components = graph.componentCount >= 0 ? graph.componentCount : connectedComponents(graph).componentCount();
+        return components == 1;
+    }
+
+    /** CSR の各エッジを併合した {@link UnionFind} */
+    static UnionFind connectedComponents(Graph graph) {
+        int numVertices = graph.addressList.length;
+        UnionFind components = new UnionFind(numVertices);
+        for (int vertex = 0; vertex < numVertices; vertex++) {
+            for (int i = graph.addressList[vertex]; i < graph.cursor[vertex]; i++) {
                 int neighbor = graph.edgeList[i];
-                if (!visited[neighbor]) {
-                    visited[neighbor] = true;
-                    queue.add(neighbor);
-                    visitedCount++;
+                if (neighbor > vertex) {
+                    components.union(vertex, neighbor);
                 }
             }
         }
-        return visitedCount == numVertices;
+        return components;
+    }
+
+    /**
+     * 最大連結成分だけを取り出したグラフ。
+     * 頂点番号は元の順序を保って 0 から詰め直すので、隣接リストの昇順もそのまま保たれる。
+     * 同じ大きさの成分が複数あるときは、最小の頂点番号を含む成分を選ぶ。
+     */
+    static Graph largestConnectedComponent(Graph graph) {
+        int numVertices = graph.addressList.length;
+        UnionFind components = connectedComponents(graph);
+        int largestRoot = -1;
+        int largestSize = 0;
+        for (int vertex = 0; vertex < numVertices; vertex++) {
+            int size = components.componentSize(vertex);
+            if (size > largestSize) {
+                largestSize = size;
+                largestRoot = components.find(vertex);
+            }
+        }
+
+        int[] newIndex = new int[numVertices];
+        int keptVertices = 0;
+        int keptSlots = 0;
+        for (int vertex = 0; vertex < numVertices; vertex++) {
+            if (components.find(vertex) == largestRoot) {
+                newIndex[vertex] = keptVertices++;
+                keptSlots += graph.cursor[vertex] - graph.addressList[vertex];
+            } else {
+                newIndex[vertex] = -1;
+            }
+        }
+
+        int[] addressList = new int[keptVertices];
+        int[] cursor = new int[keptVertices];
+        int[] edgeList = new int[keptSlots];
+        int position = 0;
+        for (int vertex = 0; vertex < numVertices; vertex++) {
+            int index = newIndex[vertex];
+            if (index < 0) {
+                continue;
+            }
+            addressList[index] = position;
+            for (int i = graph.addressList[vertex]; i < graph.cursor[vertex]; i++) {
+                edgeList[position++] = newIndex[graph.edgeList[i]];
+            }
+            cursor[index] = position;
+        }
+        Graph component = new Graph(edgeList, addressList, cursor);
+        component.componentCount = 1;
+        return component;
     }
 
     /**
      * シミュレーション引数をCSVに出力
      */
-    private static void writeSimulationArgsCsv(String baseFilename, double[] alphaValues, double[] lambdaValues,
-                                                 int iterations, int maxTime) throws IOException {
+    private static void writeSimulationArgsCsv(String outputDir, String baseFilename, double[] alphaValues,
+                                                 double[] lambdaValues, int iterations, int maxTime) throws IOException {
         String filename = baseFilename.replace(".csv", "") + ".csv";
-        String outputPath = "simulation_results/" + filename;
+        String outputPath = outputDir + "/" + filename;
         try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputPath))) {
             writer.write("alphaValues,lambdaValues,iterations,maxTime");
             writer.newLine();
@@ -125,45 +203,51 @@ public class DiscreteTimeTrendEffectSARSimulation {
     }
 
     /**
-     * シミュレーション結果（4次元配列）をCSVに出力
-     * データは [α][λ][反復][時刻] の順で書き出す。
+     * グラフの経験次数分布 p(k) をCSVに出力（EBCM の pk として使う）
      */
-    private static void writeSimulationResultCsv(String baseFilename, int[][][][] simulationData,
-                                                  double[] alphaValues, double[] lambdaValues,
-                                                  int iterations, int maxTime, int batchNumber) throws IOException {
-        int numAlpha = alphaValues.length;
-        int numLambda = lambdaValues.length;
-        String filename = baseFilename.replace(".csv", "") + "_" + batchNumber + ".csv";
-        String outputPath = "simulation_results/" + filename;
+    private static void writeDegreeDistributionCsv(String outputDir, String baseFilename, double[] pk) throws IOException {
+        String filename = baseFilename.replace(".csv", "") + ".csv";
+        String outputPath = outputDir + "/" + filename;
         try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputPath))) {
-            writer.write("value");
+            writer.write("k,pk");
             writer.newLine();
-            for (int a = 0; a < numAlpha; a++) {
-                for (int l = 0; l < numLambda; l++) {
-                    for (int iter = 0; iter < iterations; iter++) {
-                        for (int t = 0; t <= maxTime; t++) {
-                            writer.write(String.format("%d", simulationData[a][l][iter][t]));
-                            writer.newLine();
-                        }
-                    }
-                }
+            for (int k = 0; k < pk.length; k++) {
+                writer.write(k + "," + pk[k]);
+                writer.newLine();
             }
         }
     }
 
+    /** グラフの経験次数分布 p(k) */
+    static double[] empiricalDegreeDistribution(Graph graph) {
+        int numVertices = graph.addressList.length;
+        int[] degrees = new int[numVertices];
+        for (int vertex = 0; vertex < numVertices; vertex++) {
+            degrees[vertex] = graph.cursor[vertex] - graph.addressList[vertex];
+        }
+        return DegreeDistribution.fromDegreeSequence(degrees).pk();
+    }
+
     /**
      * シミュレーションパラメータ詳細情報をCSVに出力
      */
-    private static void writeSimulationParametersCsv(String baseFilename, String graphType, int numVertices, double averageDegree,
+    private static void writeSimulationParametersCsv(String outputDir, String baseFilename, String graphType,
+                                                       String networkDescription,
+                                                       int numVertices, double averageDegree,
                                                        int maxTime, int numBatches, int iterations,
-                                                       double p, int ta, int tb, double initialAdoptionRate, double gamma)
+                                                       double p, int ta, int tb, double initialAdoptionRate, double gamma,
+                                                       String samplingMode, String kernelMode,
+                                                       boolean useGraphEnsemble, String outputMode,
+                                                       String connectivityMode, String sweepMode, int adaptiveLevels,
+                                                       long seed)
             throws IOException {
         String filename = baseFilename.replace(".csv", "") + ".csv";
-        String outputPath = "simulation_results/" + filename;
+        String outputPath = outputDir + "/" + filename;
         try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputPath))) {
             writer.write("Parameter,Type,Value");
             writer.newLine();
             writeSingleParameter(writer, "Network", graphType);
+            writeSingleParameter(writer, "networkDescription", networkDescription);
             writeSingleParameter(writer, "numVertices", numVertices);
             writeSingleParameter(writer, "averageDegree", averageDegree);
             writeSingleParameter(writer, "maxTime", maxTime);
@@ -174,6 +258,14 @@ public class DiscreteTimeTrendEffectSARSimulation {
             writeSingleParameter(writer, "tb", tb);
             writeSingleParameter(writer, "initialAdoptionRate", initialAdoptionRate);
             writeSingleParameter(writer, "gamma", gamma);
+            writeSingleParameter(writer, "samplingMode", samplingMode);
+            writeSingleParameter(writer, "kernelMode", kernelMode);
+            writeSingleParameter(writer, "useGraphEnsemble", useGraphEnsemble);
+            writeSingleParameter(writer, "outputMode", outputMode);
+            writeSingleParameter(writer, "connectivityMode", connectivityMode);
+            writeSingleParameter(writer, "sweepMode", sweepMode);
+            writeSingleParameter(writer, "adaptiveLevels", adaptiveLevels);
+            writeSingleParameter(writer, "seed", seed);
         }
     }
 
@@ -199,246 +291,150 @@ public class DiscreteTimeTrendEffectSARSimulation {
         return listValues;
     }
 
+    /**
+     * 出力形式に応じた結果シンクを作る。
+     * TRAJECTORIES では活動家の採用者数・偏屈者の採用者数・回復者数を [α][λ][反復][時刻] の形状で逐次書き込み、
+     * AGGREGATE ではセルごとの統計量だけをバッチ終了時に書き込む。
+     */
+    static ResultSink createResultSink(SimulationConfig config, int batch) throws IOException {
+        int numAlpha = config.alphaValues.length;
+        int numLambda = config.lambdaValues.length;
+        if (config.outputMode == SimulationConfig.OutputMode.AGGREGATE) {
+            return new AggregatingResultSink(RESULTS_DIR, batch, numAlpha, numLambda,
+                    config.numVertices, config.maxTime, config.finalSizeBins);
+        }
+        return new NpyResultSink(RESULTS_DIR, batch, numAlpha, numLambda, config.totalIterations(), config.maxTime);
+    }
+
+    /**
+     * コマンドライン引数を設定に反映する。
+     * <ul>
+     *   <li>{@code --shard k/n}：(α, λ) セルを n 個のシャードに分け、k 番目（0 始まり）だけを実行する</li>
+     * </ul>
+     */
+    static void parseArguments(String[] args, SimulationConfig config) {
+        for (int i = 0; i < args.length; i++) {
+            if ("--shard".equals(args[i]) && i + 1 < args.length) {
+                String[] parts = args[++i].split("/");
+                if (parts.length != 2) {
+                    throw new IllegalArgumentException("--shard expects k/n: " + args[i]);
+                }
+                config.shardIndex = Integer.parseInt(parts[0]);
+                config.shardCount = Integer.parseInt(parts[1]);
+                if (config.shardCount < 1 || config.shardIndex < 0 || config.shardIndex >= config.shardCount) {
+                    throw new IllegalArgumentException("shard index must be in [0, n): " + args[i]);
+                }
+            } else {
+                throw new IllegalArgumentException("unknown argument: " + args[i]);
+            }
+        }
+    }
+
+    /**
+     * このシャードが受け持つセルのうち、ジャーナルに完了と記録されていないものだけを実行する。
+     * 中断後に同じ引数で起動し直すと続きから再開する。
+     */
+    static void runShard(SimulationConfig config, ParallelSweepEngine engine, Path directory)
+            throws IOException {
+        try (ShardJournal journal = ShardJournal.open(directory.resolve(ShardJournal.FILE_NAME), config)) {
+            for (int batch = 1; batch <= config.numBatches; batch++) {
+                int[] cells = journal.pendingCells(batch);
+                int owned = ShardResultSink.localCellCount(config.alphaValues.length * config.lambdaValues.length,
+                        config.shardIndex, config.shardCount);
+                System.out.printf("shard %d/%d batch %d: %d of %d cells remaining%n",
+                        config.shardIndex, config.shardCount, batch, cells.length, owned);
+                if (cells.length == 0) {
+                    continue;
+                }
+                try (ShardResultSink sink = new ShardResultSink(directory, batch, config, journal)) {
+                    engine.run(batch, cells, sink);
+                }
+            }
+        }
+    }
+
     public static void main(String[] args) throws IOException {
         long startTime = System.nanoTime();
 
-        // -------------------- グラフ生成パラメータ --------------------
-        String graphType = "ER";
-        int numVertices = 10000;
-        double averageDegree = 10;
-
-        // -------------------- シミュレーションパラメータ --------------------
-        int maxTime = 100;
-        int numBatches = 1;
-        int networkIterationCount = 4;
-        int simulationIterationCount = 25;
-        int totalIterations = networkIterationCount * simulationIterationCount;
-        double initialAdoptionRate = 1.0 / numVertices;
-        double gamma = 1.0;
-        double p = 0.2;
-        int ta = 1;
-        int tb = 4;
-        int[] thresholdPair = {ta, tb};
-
-        // α, λ の値（例：0〜1.1 を0.1刻み）
-        double lambdaStep = 0.01;
-        double[] lambdaValues = arange(0, 1.0, lambdaStep);
-        double alphaStep = 0.01;
-        double[] alphaValues = arange(0, 1.1, alphaStep);
+        SimulationConfig config = new SimulationConfig();
+        parseArguments(args, config);
+        boolean sharded = config.shardCount > 0;
+        if (sharded && (config.sweepMode != SimulationConfig.SweepMode.GRID
+                || config.outputMode != SimulationConfig.OutputMode.TRAJECTORIES)) {
+            throw new IllegalArgumentException("sharded runs support sweepMode GRID with outputMode TRAJECTORIES");
+        }
+
+        // α, λ の値（例：0〜1.1 を0.1刻み）。ADAPTIVE では粗いグリッドにして、転移付近だけを細分する
+        boolean adaptive = config.sweepMode == SimulationConfig.SweepMode.ADAPTIVE;
+        double lambdaStep = adaptive ? 0.04 : 0.01;
+        config.lambdaValues = arange(0, 1.0, lambdaStep);
+        double alphaStep = adaptive ? 0.04 : 0.01;
+        config.alphaValues = arange(0, 1.1, alphaStep);
+
+        int totalIterations = config.totalIterations();
+        double[] alphaValues = config.alphaValues;
+        double[] lambdaValues = config.lambdaValues;
+
+        // シャード実行では設定ファイルもシャードのディレクトリへ書き、ShardMerger がまとめる
+        String outputDir = sharded
+                ? ShardResultSink.directory(RESULTS_DIR, config.shardIndex, config.shardCount).toString()
+                : RESULTS_DIR;
+
+        // 全セルで共有するグラフ集合を生成または読み込み（ファイルのグラフは常に 1 度だけ読み込んで共有）
+        Files.createDirectories(Paths.get(outputDir));
+        boolean useEnsemble = config.useGraphEnsemble || NetworkFactory.FILE.equals(config.graphType);
+        SweepMetrics metrics = new SweepMetrics();
+        GraphEnsemble ensemble = useEnsemble ? GraphEnsemble.buildOrLoad(config, metrics) : null;
+        if (NetworkFactory.FILE.equals(config.graphType)) {
+            config.numVertices = ensemble.numVertices(0);
+        }
 
         // シミュレーションパラメータをCSVに出力
-        writeSimulationParametersCsv("parameters.csv", graphType, numVertices, averageDegree, maxTime, numBatches, totalIterations, p, ta, tb, initialAdoptionRate, gamma);
-        writeSimulationArgsCsv("args.csv", alphaValues, lambdaValues, totalIterations, maxTime);
+        writeSimulationParametersCsv(outputDir, "parameters.csv", config.graphType, config.networkDescription(),
+                config.numVertices, config.averageDegree,
+                config.maxTime, config.numBatches, totalIterations, config.p, config.ta, config.tb,
+                config.initialAdoptionRate, config.gamma, config.samplingMode.name(), config.kernelMode.name(),
+                config.useGraphEnsemble,
+                config.outputMode.name(), config.connectivityMode.name(), config.sweepMode.name(),
+                config.adaptiveLevels, config.seed);
+        writeSimulationArgsCsv(outputDir, "args.csv", alphaValues, lambdaValues, totalIterations, config.maxTime);
+        if (ensemble != null) {
+            writeDegreeDistributionCsv(outputDir, "degree_distribution.csv", ensemble.degreeDistribution(0));
+        }
 
-        Random random = new Random();
-        int numAlpha = alphaValues.length;
-        int numLambda = lambdaValues.length;
+        ParallelSweepEngine engine = new ParallelSweepEngine(config, ensemble, metrics);
+        System.out.println("threads: " + config.numThreads + " seed: " + config.seed);
 
         // -------------------- バッチ単位でシミュレーション --------------------
-        for (int batch = 1; batch <= numBatches; batch++) {
-
-            // バッチごとに結果配列を新規作成
-            int[][][][] aaResults = new int[numAlpha][numLambda][totalIterations][maxTime + 1]; // 活動家の採用者数
-            int[][][][] abResults = new int[numAlpha][numLambda][totalIterations][maxTime + 1]; // 偏屈者の採用者数
-            int[][][][] rResults  = new int[numAlpha][numLambda][totalIterations][maxTime + 1]; // 回復者数
-
-            for (int alphaIdx = 0; alphaIdx < numAlpha; alphaIdx++) {
-                double currentAlpha = alphaValues[alphaIdx];
-                if (alphaIdx % (int)(numAlpha / 10) == 0) {
-                    System.out.printf("alpha: " + currentAlpha);
-                    long elapsedTime = System.nanoTime() - startTime;
-                    long seconds = (elapsedTime / 1_000_000_000) % 60;
-                    long minutes = (elapsedTime / 1_000_000_000 / 60) % 60;
-                    long hours = (elapsedTime / 1_000_000_000) / 3600;
-                    System.out.printf(" Elapsed Time: %d hours %d minutes %d seconds%n", hours, minutes, seconds);
+        if (sharded) {
+            runShard(config, engine, Paths.get(outputDir));
+        } else {
+            for (int batch = 1; batch <= config.numBatches; batch++) {
+
+                if (adaptive) {
+                    new AdaptiveSweep(config, engine).run(batch, RESULTS_DIR);
+                    continue;
+                }
+
+                // バッチごとに .npy へ出力（ファイル名にバッチ番号を付与）
+                try (ResultSink sink = createResultSink(config, batch)) {
+                    engine.run(batch, sink);
                 }
-                for (int lambdaIdx = 0; lambdaIdx < numLambda; lambdaIdx++) {
-                    double currentLambda = lambdaValues[lambdaIdx];
-                    if (alphaIdx % (int)(numAlpha / 10) == 0 && lambdaIdx % (int)(numLambda / 10) == 0) {
-                        System.out.println("  --> lambda: " + currentLambda);
-                    }
-
-                    // ネットワーク反復
-                    for (int netIter = 0; netIter < networkIterationCount; netIter++) {
-                        // 連結グラフが得られるまで生成
-                        Graph graph;
-                        do {
-                            graph = generateErdosRenyiGraph(random, numVertices, averageDegree);
-                        } while (!checkGraphConnectivity(graph, numVertices));
-                        int[] edgeList = graph.edgeList;
-                        int[] addressList = graph.addressList;
-                        int[] cursor = graph.cursor;
-
-                        // 同一ネットワーク上で複数回シミュレーション実行
-                        for (int simIter = 0; simIter < simulationIterationCount; simIter++) {
-                            int iterationIndex = netIter * simulationIterationCount + simIter;
-
-                            // 初期閾値設定（すべてthresholdPair[1]で初期化）
-                            int[] nodeThresholds = new int[numVertices];
-                            Arrays.fill(nodeThresholds, thresholdPair[1]);
-
-                            // アクティビストの選出（確率p）
-                            int numActivists = (int) (p * numVertices);
-                            List<Integer> nodeIndices = new ArrayList<>();
-                            for (int v = 0; v < numVertices; v++) {
-                                nodeIndices.add(v);
-                            }
-                            Collections.shuffle(nodeIndices);
-                            List<Integer> activists = new ArrayList<>(nodeIndices.subList(0, numActivists));
-                            for (int node : activists) {
-                                nodeThresholds[node] = thresholdPair[0];
-                            }
-
-                            // ノード状態の初期化
-                            // 状態：0 = Susceptible, 1 = AdoptedA, 2 = AdoptedB, 3 = RecoveredA, 4 = RecoveredB
-                            int[] nodeStates = new int[numVertices];
-                            int currentAdoptedA = 0;
-                            int currentAdoptedB = 0;
-
-                            // 初期採用者の設定（初期採用率に基づきランダム選出）
-                            int initialAdopters = (int) (initialAdoptionRate * numVertices);
-                            Collections.shuffle(nodeIndices);
-                            List<Integer> initialAdoptersList = new ArrayList<>(nodeIndices.subList(0, initialAdopters));
-                            for (int node : initialAdoptersList) {
-                                if (nodeThresholds[node] == thresholdPair[0]) {
-                                    nodeStates[node] = 1;
-                                    currentAdoptedA++;
-                                } else {
-                                    nodeStates[node] = 2;
-                                    currentAdoptedB++;
-                                }
-                            }
-
-                            // 時系列データリスト：各リストのインデックスが時刻 t (0～maxTime)
-                            List<Integer> adoptedAList = new ArrayList<>();
-                            List<Integer> adoptedBList = new ArrayList<>();
-                            List<Integer> recoveredAList = new ArrayList<>();
-                            List<Integer> recoveredBList = new ArrayList<>();
-                            // 初期状態の記録
-                            adoptedAList.add(currentAdoptedA);
-                            adoptedBList.add(currentAdoptedB);
-                            recoveredAList.add(0);
-                            recoveredBList.add(0);
-
-                            // 各ノードに伝達済みの隣接ノード集合を記録
-                            List<Set<Integer>> informedNeighbors = new ArrayList<>();
-                            for (int i = 0; i < numVertices; i++) {
-                                informedNeighbors.add(new HashSet<>());
-                            }
-
-                            int timeStep = 0;
-                            int totalAdopted = currentAdoptedA + currentAdoptedB;
-
-                            // 固定ステップ数maxTimeだけシミュレーション実行
-                            while (timeStep < maxTime && totalAdopted < numVertices) {
-                                Set<Integer> susceptibleToAdoptA = new HashSet<>();
-                                Set<Integer> susceptibleToAdoptB = new HashSet<>();
-                                Set<Integer> adoptedToRecoveredA = new HashSet<>();
-                                Set<Integer> adoptedToRecoveredB = new HashSet<>();
-
-                                for (int node = 0; node < numVertices; node++) {
-                                    if (nodeStates[node] == 0) {  // Susceptible
-                                        // 流行効果
-                                        if (random.nextDouble() < currentAlpha * totalAdopted / numVertices) {
-                                            if (nodeThresholds[node] == thresholdPair[0]) {
-                                                susceptibleToAdoptA.add(node);
-                                            } else {
-                                                susceptibleToAdoptB.add(node);
-                                            }
-                                        }
-                                    } else if (nodeStates[node] == 1 || nodeStates[node] == 2) {  // Adopted状態
-                                        // 口コミによる情報拡散
-                                        for (int i = addressList[node]; i < cursor[node]; i++) {
-                                            int neighbor = edgeList[i];
-                                            if (nodeStates[neighbor] == 0 && random.nextDouble() < currentLambda) {
-                                                informedNeighbors.get(neighbor).add(node);
-                                                if (informedNeighbors.get(neighbor).size() >= nodeThresholds[neighbor]) {
-                                                    if (nodeThresholds[neighbor] == thresholdPair[0]) {
-                                                        susceptibleToAdoptA.add(neighbor);
-                                                    } else {
-                                                        susceptibleToAdoptB.add(neighbor);
-                                                    }
-                                                }
-                                            }
-                                        }
-                                        // 採用状態から回復
-                                        if (random.nextDouble() < gamma) {
-                                            if (nodeStates[node] == 1) {
-                                                adoptedToRecoveredA.add(node);
-                                            } else {
-                                                adoptedToRecoveredB.add(node);
-                                            }
-                                        }
-                                    }
-                                }
-
-                                // 状態更新
-                                for (int node : susceptibleToAdoptA) {
-                                    if (nodeStates[node] == 0) {
-                                        nodeStates[node] = 1;
-                                        currentAdoptedA++;
-                                    }
-                                }
-                                for (int node : susceptibleToAdoptB) {
-                                    if (nodeStates[node] == 0) {
-                                        nodeStates[node] = 2;
-                                        currentAdoptedB++;
-                                    }
-                                }
-                                for (int node : adoptedToRecoveredA) {
-                                    if (nodeStates[node] == 1) {
-                                        nodeStates[node] = 3;
-                                        currentAdoptedA--;
-                                    }
-                                }
-                                for (int node : adoptedToRecoveredB) {
-                                    if (nodeStates[node] == 2) {
-                                        nodeStates[node] = 4;
-                                        currentAdoptedB--;
-                                    }
-                                }
-
-                                // 次の時刻の記録
-                                adoptedAList.add(currentAdoptedA);
-                                adoptedBList.add(currentAdoptedB);
-                                int prevRecoveredA = recoveredAList.get(recoveredAList.size() - 1);
-                                int prevRecoveredB = recoveredBList.get(recoveredBList.size() - 1);
-                                recoveredAList.add(prevRecoveredA + adoptedToRecoveredA.size());
-                                recoveredBList.add(prevRecoveredB + adoptedToRecoveredB.size());
-
-                                timeStep++;
-                                totalAdopted = currentAdoptedA + currentAdoptedB;
-                            } // end timeStep loop
-
-                            // 時刻がmaxTimeに達していない場合は、最後の時刻の値を維持
-                            if (timeStep != maxTime) {
-                                for (int t = timeStep; t < maxTime; t++) {
-                                    adoptedAList.add(adoptedAList.get(timeStep - 1));
-                                    adoptedBList.add(adoptedBList.get(timeStep - 1));
-                                    recoveredAList.add(recoveredAList.get(timeStep - 1));
-                                    recoveredBList.add(recoveredBList.get(timeStep - 1));
-                                }
-                            }
-                            // 結果を各時刻ごとに保存（時刻0～maxTime）
-                            for (int t = 0; t <= maxTime; t++) {
-                                int adoptedA = adoptedAList.get(t);
-                                int adoptedB = adoptedBList.get(t);
-                                aaResults[alphaIdx][lambdaIdx][iterationIndex][t] = adoptedA;
-                                abResults[alphaIdx][lambdaIdx][iterationIndex][t] = adoptedB;
-                                int recovA = recoveredAList.get(t);
-                                int recovB = recoveredBList.get(t);
-                                rResults[alphaIdx][lambdaIdx][iterationIndex][t] = recovA + recovB;
-                            }
-                        } // end simulationIteration loop
-                    } // end networkIteration loop
-                } // end lambda loop
-            } // end alpha loop
-
-            // 各バッチ毎にCSV出力（ファイル名にバッチ番号を付与）
-            writeSimulationResultCsv("aa_all_results.csv", aaResults, alphaValues, lambdaValues, totalIterations, maxTime, batch);
-            writeSimulationResultCsv("ab_all_results.csv", abResults, alphaValues, lambdaValues, totalIterations, maxTime, batch);
-            writeSimulationResultCsv("r_all_results.csv", rResults, alphaValues, lambdaValues, totalIterations, maxTime, batch);
-        } // end batch loop
+            } // end batch loop
+        }
+
+        // 同じ (α, λ) グリッドで EBCM を解き、理論値を ebcm_*.npy に出力（シャード実行ではシャード 0 だけ）
+        if (config.solveEbcm && config.shardIndex == 0) {
+            long ebcmStart = System.nanoTime();
+            double[] pk = EBCMSolver.degreeDistribution(config, ensemble);
+            EBCMSolver solver = new EBCMSolver(config, pk);
+            solver.writeNpy(RESULTS_DIR, solver.solve());
+            System.out.printf("EBCM: %.1f s%n", (System.nanoTime() - ebcmStart) / 1e9);
+        }
+
+        // フェーズ別の時間と処理量を表示し、metrics_summary.csv・metrics_cells.csv に出力
+        metrics.printSummary();
+        metrics.writeSummary(Paths.get(outputDir), config.numThreads);
 
         long endTime = System.nanoTime();
         long totalSeconds = (endTime - startTime) / 1_000_000_000;
@@ -0,0 +1,351 @@
+package java_simulation;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * エッジベース区画モデル (EBCM) の微分方程式を (α, λ) グリッド全体について解く。
+ * <p>
+ * {@code src/ebcm.py} の {@code sar_derivatives} と {@code runge_kutta4} を移植したもので、
+ * 状態は y = (θ, q, S_l, S_h, A_a, A_b, R_a, R_b)。活動家の閾値 ta、偏屈家の閾値 tb を一般に扱い、
+ * ta = 1 のとき Python 版と同じ式になる。
+ * <p>
+ * 二項係数は最初に表にしておき、グリッドのセルを {@link #BLOCK_SIZE} 個ずつのブロックに分けて並列に積分する。
+ * ブロック内では変数ごとにセル方向の配列（structure of arrays）を持ち、
+ * 次数 k の外側ループ・セルの内側ループで和を取るので、内側ループは連続アクセスになる。
+ */
+public class EBCMSolver {
+
+    /** 1 ブロックで同時に積分するセル数 */
+    static final int BLOCK_SIZE = 64;
+
+    static final int THETA = 0;
+    static final int Q = 1;
+    static final int SL = 2;
+    static final int SH = 3;
+    static final int AA = 4;
+    static final int AB = 5;
+    static final int RA = 6;
+    static final int RB = 7;
+    static final int NUM_VARIABLES = 8;
+
+    private static final String[] VARIABLE_NAMES = {"theta", "q", "sl", "sh", "aa", "ab", "ra", "rb"};
+
+    private final double[] alphaValues;
+    private final double[] lambdaValues;
+    private final double gamma;
+    private final double rho0;
+    private final double p;
+    private final int ta;
+    private final int tb;
+    private final int maxTime;
+    private final int substeps;
+    private final int numThreads;
+
+    /** 次数分布 p_k と平均次数 z */
+    private final double[] pk;
+    private final double z;
+    /** binomial[k][m] = C(k, m)（m ≤ max(ta, tb)） */
+    private final double[][] binomial;
+
+    public EBCMSolver(SimulationConfig config, double[] pk) {
+        this.alphaValues = config.alphaValues;
+        this.lambdaValues = config.lambdaValues;
+        this.gamma = config.gamma;
+        this.rho0 = config.initialAdoptionRate;
+        this.p = config.p;
+        this.ta = config.ta;
+        this.tb = config.tb;
+        this.maxTime = config.maxTime;
+        this.substeps = config.ebcmSubsteps;
+        this.numThreads = config.numThreads;
+        this.pk = pk.clone();
+        double mean = 0;
+        for (int k = 0; k < pk.length; k++) {
+            mean += k * pk[k];
+        }
+        this.z = mean;
+
+        int maxM = Math.max(ta, tb);
+        this.binomial = new double[pk.length + 1][maxM + 1];
+        for (int k = 0; k <= pk.length; k++) {
+            binomial[k][0] = 1;
+            for (int m = 1; m <= maxM && m <= k; m++) {
+                binomial[k][m] = binomial[k][m - 1] * (k - m + 1) / m;
+            }
+        }
+    }
+
+    /**
+     * EBCM に使う次数分布。ER はノートブックと同じく平均次数の 3 倍で打ち切ったポアソン分布、
+     * CM は設定の次数分布、ファイルのグラフはグラフ集合の先頭の経験分布を使う。
+     */
+    static double[] degreeDistribution(SimulationConfig config, GraphEnsemble ensemble) {
+        switch (config.graphType) {
+            case NetworkFactory.ERDOS_RENYI:
+                return DegreeDistribution.poisson(config.averageDegree,
+                        (int) Math.ceil(3 * config.averageDegree)).pk();
+            case NetworkFactory.CONFIGURATION_MODEL:
+                return config.degreeDistribution.pk();
+            default:
+                if (ensemble == null) {
+                    throw new IllegalArgumentException("a graph ensemble is required for graphType " + config.graphType);
+                }
+                return ensemble.degreeDistribution(0);
+        }
+    }
+
+    /**
+     * 全セルを解き、結果を solution[変数][(alphaIdx * numLambda + lambdaIdx) * (maxTime + 1) + t] に返す。
+     * 値は Python 版と同じく各グループ内の割合。
+     */
+    public double[][] solve() {
+        int numCells = alphaValues.length * lambdaValues.length;
+        int timeLength = maxTime + 1;
+        double[][] solution = new double[NUM_VARIABLES][numCells * timeLength];
+        int numBlocks = (numCells + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        ForkJoinPool pool = new ForkJoinPool(numThreads);
+        try {
+            pool.submit(() -> IntStream.range(0, numBlocks).parallel().forEach(block -> {
+                int from = block * BLOCK_SIZE;
+                int to = Math.min(numCells, from + BLOCK_SIZE);
+                new Block(from, to).integrate(solution);
+            })).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return solution;
+    }
+
+    /** solve() の結果を ebcm_[変数].npy（形状 (α, λ, maxTime + 1), float64）として書き出す */
+    public void writeNpy(String outputDir, double[][] solution) throws IOException {
+        Path directory = Paths.get(outputDir);
+        Files.createDirectories(directory);
+        for (int variable = 0; variable < NUM_VARIABLES; variable++) {
+            NpyArrayFile.writeDoubles(directory.resolve("ebcm_" + VARIABLE_NAMES[variable] + ".npy"),
+                    solution[variable], alphaValues.length, lambdaValues.length, maxTime + 1);
+        }
+    }
+
+    /** 連続したセル [from, to) をまとめて積分する作業領域 */
+    private final class Block {
+        private final int from;
+        private final int size;
+        private final double[] alpha;
+        private final double[] lambda;
+        private final double[][] y;
+        private final double[][] stage;
+        private final double[][][] slopes;
+        // 微分の計算用
+        private final double[] theta;
+        private final double[] oneMinusTheta;
+        private final double[][] thetaPowers;
+        private final double[][] complementPowers;
+        private final double[] xi;
+        private final double[] phiA;
+        private final double[] phiB;
+        private final double[] dphiA;
+        private final double[] dphiB;
+
+        Block(int from, int to) {
+            this.from = from;
+            this.size = to - from;
+            int maxM = Math.max(ta, tb);
+            alpha = new double[size];
+            lambda = new double[size];
+            y = new double[NUM_VARIABLES][size];
+            stage = new double[NUM_VARIABLES][size];
+            slopes = new double[4][NUM_VARIABLES][size];
+            theta = new double[size];
+            oneMinusTheta = new double[size];
+            thetaPowers = new double[maxM + 1][size];
+            complementPowers = new double[maxM + 1][size];
+            xi = new double[size];
+            phiA = new double[size];
+            phiB = new double[size];
+            dphiA = new double[size];
+            dphiB = new double[size];
+            for (int c = 0; c < size; c++) {
+                int cell = from + c;
+                alpha[c] = alphaValues[cell / lambdaValues.length];
+                lambda[c] = lambdaValues[cell % lambdaValues.length];
+            }
+        }
+
+        void integrate(double[][] solution) {
+            // 初期値 y0 = [1, 1, 1 - rho0, 1 - rho0, rho0, rho0, 0, 0]
+            double[] initial = {1, 1, 1 - rho0, 1 - rho0, rho0, rho0, 0, 0};
+            for (int v = 0; v < NUM_VARIABLES; v++) {
+                Arrays.fill(y[v], initial[v]);
+            }
+            record(solution, 0);
+            double h = 1.0 / substeps;
+            for (int t = 1; t <= maxTime; t++) {
+                for (int s = 0; s < substeps; s++) {
+                    rungeKuttaStep(h);
+                }
+                record(solution, t);
+            }
+        }
+
+        private void record(double[][] solution, int t) {
+            int timeLength = maxTime + 1;
+            for (int v = 0; v < NUM_VARIABLES; v++) {
+                for (int c = 0; c < size; c++) {
+                    solution[v][(from + c) * timeLength + t] = y[v][c];
+                }
+            }
+        }
+
+        /** 古典的 4 次ルンゲクッタ法で全セルを h だけ進める */
+        private void rungeKuttaStep(double h) {
+            derivatives(y, slopes[0]);
+            advance(slopes[0], h / 2);
+            derivatives(stage, slopes[1]);
+            advance(slopes[1], h / 2);
+            derivatives(stage, slopes[2]);
+            advance(slopes[2], h);
+            derivatives(stage, slopes[3]);
+            for (int v = 0; v < NUM_VARIABLES; v++) {
+                double[] yv = y[v];
+                double[] k1 = slopes[0][v];
+                double[] k2 = slopes[1][v];
+                double[] k3 = slopes[2][v];
+                double[] k4 = slopes[3][v];
+                for (int c = 0; c < size; c++) {
+                    yv[c] += h * (k1[c] + 2 * k2[c] + 2 * k3[c] + k4[c]) / 6;
+                }
+            }
+        }
+
+        /** stage = y + step × slope */
+        private void advance(double[][] slope, double step) {
+            for (int v = 0; v < NUM_VARIABLES; v++) {
+                double[] yv = y[v];
+                double[] sv = slope[v];
+                double[] out = stage[v];
+                for (int c = 0; c < size; c++) {
+                    out[c] = yv[c] + step * sv[c];
+                }
+            }
+        }
+
+        /** sar_derivatives をブロック内の全セルについて計算する */
+        private void derivatives(double[][] state, double[][] out) {
+            degreeSums(state[THETA]);
+            for (int c = 0; c < size; c++) {
+                double th = state[THETA][c];
+                double q = state[Q][c];
+                double a = p * state[AA][c] + (1 - p) * state[AB][c];
+                double xiS = (1 - rho0) * q * xi[c] / z;
+                double dtheta = -lambda[c] * (th - xiS) + gamma * (1 - th) * (1 - lambda[c]);
+                double dq = -alpha[c] * a * q;
+                double dsl = (1 - rho0) * (dq * phiA[c] + q * dphiA[c] * dtheta);
+                double dsh = (1 - rho0) * (dq * phiB[c] + q * dphiB[c] * dtheta);
+                out[THETA][c] = dtheta;
+                out[Q][c] = dq;
+                out[SL][c] = dsl;
+                out[SH][c] = dsh;
+                out[AA][c] = -dsl - gamma * state[AA][c];
+                out[AB][c] = -dsh - gamma * state[AB][c];
+                out[RA][c] = gamma * state[AA][c];
+                out[RB][c] = gamma * state[AB][c];
+            }
+        }
+
+        /**
+         * θ に依存する次数についての和を求める。
+         * <ul>
+         *   <li>xi = Σ_k k p_k [p Φ_{k-1}(ta) + (1 - p) Φ_{k-1}(tb)]</li>
+         *   <li>phiA = Σ_k p_k Φ_k(ta), phiB = Σ_k p_k Φ_k(tb)</li>
+         *   <li>dphiA, dphiB = それぞれの θ 微分 Σ_k p_k k C(k-1, T-1) θ^(k-T) (1-θ)^(T-1)</li>
+         * </ul>
+         * ここで Φ_k(T) = Σ_{m&lt;T} C(k, m) θ^(k-m) (1-θ)^m は、k 本のエッジのうち伝達済みが T 本未満である確率。
+         * θ^(k-m) は直近 max(ta, tb) + 1 個の冪をリングバッファに持って使い回す。
+         */
+        private void degreeSums(double[] thetaValues) {
+            int maxM = Math.max(ta, tb);
+            int ring = maxM + 1;
+            for (int c = 0; c < size; c++) {
+                theta[c] = thetaValues[c];
+                oneMinusTheta[c] = 1 - thetaValues[c];
+                xi[c] = 0;
+                phiA[c] = 0;
+                phiB[c] = 0;
+                dphiA[c] = 0;
+                dphiB[c] = 0;
+                complementPowers[0][c] = 1;
+                thetaPowers[0][c] = 1;
+            }
+            for (int m = 1; m <= maxM; m++) {
+                double[] previous = complementPowers[m - 1];
+                double[] current = complementPowers[m];
+                for (int c = 0; c < size; c++) {
+                    current[c] = previous[c] * oneMinusTheta[c];
+                }
+            }
+
+            for (int k = 0; k < pk.length; k++) {
+                // thetaPowers[e % ring] = θ^e（e = k … k - maxM）
+                if (k > 0) {
+                    double[] previous = thetaPowers[(k - 1) % ring];
+                    double[] current = thetaPowers[k % ring];
+                    for (int c = 0; c < size; c++) {
+                        current[c] = previous[c] * theta[c];
+                    }
+                }
+                double weight = pk[k];
+                if (weight == 0) {
+                    continue;
+                }
+                // Φ_k(T) と微分
+                accumulatePhi(k, ta, weight, ring, phiA, dphiA);
+                accumulatePhi(k, tb, weight, ring, phiB, dphiB);
+                // k Φ_{k-1}(T)
+                if (k > 0) {
+                    double activistWeight = k * weight * p;
+                    double bigotWeight = k * weight * (1 - p);
+                    for (int m = 0; m < Math.max(ta, tb) && m <= k - 1; m++) {
+                        double coefficient = (m < ta ? activistWeight : 0) + (m < tb ? bigotWeight : 0);
+                        coefficient *= binomial[k - 1][m];
+                        double[] thetaPower = thetaPowers[(k - 1 - m) % ring];
+                        double[] complementPower = complementPowers[m];
+                        for (int c = 0; c < size; c++) {
+                            xi[c] += coefficient * thetaPower[c] * complementPower[c];
+                        }
+                    }
+                }
+            }
+        }
+
+        private void accumulatePhi(int k, int threshold, double weight, int ring, double[] phi, double[] dphi) {
+            for (int m = 0; m < threshold && m <= k; m++) {
+                double coefficient = weight * binomial[k][m];
+                double[] thetaPower = thetaPowers[(k - m) % ring];
+                double[] complementPower = complementPowers[m];
+                for (int c = 0; c < size; c++) {
+                    phi[c] += coefficient * thetaPower[c] * complementPower[c];
+                }
+            }
+            if (k >= threshold) {
+                double coefficient = weight * k * binomial[k - 1][threshold - 1];
+                double[] thetaPower = thetaPowers[(k - threshold) % ring];
+                double[] complementPower = complementPowers[threshold - 1];
+                for (int c = 0; c < size; c++) {
+                    dphi[c] += coefficient * thetaPower[c] * complementPower[c];
+                }
+            }
+        }
+    }
+}
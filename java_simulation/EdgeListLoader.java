@@ -0,0 +1,183 @@
+package java_simulation;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import java_simulation.DiscreteTimeTrendEffectSARSimulation.Graph;
+
+/**
+ * テキストのエッジリスト（1 行に "u v"、頂点番号は 0 始まりの整数）を読み込む。
+ * <p>
+ * 区切りは空白・タブ・カンマ（行末の '\r' も可）。3 列目以降（重みなど）は無視し、'#' または '%' で始まる行はコメントとして読み飛ばす。
+ * 頂点番号の列にそれ以外の文字（負号・小数点・英字など）があれば、別の形式のファイルとみなして IOException を投げる。
+ * ファイルを行の境目で複数の区間に分け、区間ごとにメモリマップして並列に解析する。
+ * 区間の結果はファイル順に連結するので、読み込み結果はスレッド数に依存しない。
+ * 自己ループと重複エッジは取り除き、頂点数は最大の頂点番号 + 1 とする。
+ */
+final class EdgeListLoader {
+
+    /** 1 区間の最大バイト数 */
+    private static final long MAX_CHUNK_BYTES = 1L << 28;
+
+    private EdgeListLoader() {
+    }
+
+    static Graph load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int numChunks = (int) Math.max(Runtime.getRuntime().availableProcessors(),
+                    (size + MAX_CHUNK_BYTES - 1) / MAX_CHUNK_BYTES);
+            long[] boundaries = chunkBoundaries(channel, size, numChunks);
+
+            int[][] chunkEndpoints = new int[numChunks][];
+            int[] chunkLengths = new int[numChunks];
+            try {
+                IntStream.range(0, numChunks).parallel().forEach(chunk -> {
+                    try {
+                        parseChunk(channel, boundaries[chunk], boundaries[chunk + 1], chunk, chunkEndpoints, chunkLengths);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            // ファイル順に連結しながら自己ループ・重複エッジを除く
+            long totalEndpoints = 0;
+            for (int length : chunkLengths) {
+                totalEndpoints += length;
+            }
+            if (totalEndpoints > Integer.MAX_VALUE - 8) {
+                throw new IOException("too many edges in " + path);
+            }
+            int[] endpoints = new int[(int) totalEndpoints];
+            LongOpenHashSet selectedEdges = new LongOpenHashSet();
+            selectedEdges.reset((int) (totalEndpoints / 2));
+            int edgeCount = 0;
+            int maxVertex = -1;
+            for (int chunk = 0; chunk < numChunks; chunk++) {
+                int[] values = chunkEndpoints[chunk];
+                for (int i = 0; i < chunkLengths[chunk]; i += 2) {
+                    int u = values[i];
+                    int v = values[i + 1];
+                    maxVertex = Math.max(maxVertex, Math.max(u, v));
+                    if (u == v) continue;  // 自己ループ除外
+                    long edgeKey = (u < v) ? ((long) u << 32) | v : ((long) v << 32) | u;
+                    if (selectedEdges.add(edgeKey)) {
+                        endpoints[2 * edgeCount] = u;
+                        endpoints[2 * edgeCount + 1] = v;
+                        edgeCount++;
+                    }
+                }
+                chunkEndpoints[chunk] = null;
+            }
+            return CsrBuilder.build(maxVertex + 1, endpoints, edgeCount);
+        }
+    }
+
+    /** 区間の境目を、名目上の位置の直後の行頭にそろえる */
+    private static long[] chunkBoundaries(FileChannel channel, long size, int numChunks) throws IOException {
+        long[] boundaries = new long[numChunks + 1];
+        boundaries[numChunks] = size;
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        for (int chunk = 1; chunk < numChunks; chunk++) {
+            long position = Math.max(boundaries[chunk - 1], size * chunk / numChunks);
+            boundaries[chunk] = size;
+            search:
+            while (position < size) {
+                probe.clear();
+                int read = channel.read(probe, position);
+                if (read <= 0) {
+                    break;
+                }
+                for (int i = 0; i < read; i++) {
+                    if (probe.get(i) == '\n') {
+                        boundaries[chunk] = position + i + 1;
+                        break search;
+                    }
+                }
+                position += read;
+            }
+        }
+        return boundaries;
+    }
+
+    /** [start, end) の行を解析し、端点を chunkEndpoints[chunk] に詰める */
+    private static void parseChunk(FileChannel channel, long start, long end, int chunk,
+                                   int[][] chunkEndpoints, int[] chunkLengths) throws IOException {
+        int[] values = new int[1024];
+        int length = 0;
+        if (end > start) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            int limit = buffer.limit();
+            int i = 0;
+            while (i < limit) {
+                // 行頭：コメント行と空行を読み飛ばす
+                byte first = buffer.get(i);
+                if (first == '#' || first == '%') {
+                    while (i < limit && buffer.get(i) != '\n') {
+                        i++;
+                    }
+                    i++;
+                    continue;
+                }
+                int column = 0;
+                int u = 0;
+                while (i < limit) {
+                    byte b = buffer.get(i);
+                    if (b == '\n') {
+                        i++;
+                        break;
+                    }
+                    if (column >= 2) {
+                        // 3 列目以降は読み飛ばす
+                        i++;
+                        continue;
+                    }
+                    if (b >= '0' && b <= '9') {
+                        long value = 0;
+                        while (i < limit && (b = buffer.get(i)) >= '0' && b <= '9') {
+                            value = value * 10 + (b - '0');
+                            if (value > Integer.MAX_VALUE) {
+                                throw new IOException("vertex id out of range near byte " + (start + i));
+                            }
+                            i++;
+                        }
+                        if (i < limit && b != ' ' && b != '\t' && b != ',' && b != '\r' && b != '\n') {
+                            throw new IOException("unexpected character 0x" + Integer.toHexString(b & 0xFF)
+                                    + " in vertex id column near byte " + (start + i));
+                        }
+                        if (column == 0) {
+                            u = (int) value;
+                        } else {
+                            if (length + 2 > values.length) {
+                                values = Arrays.copyOf(values, values.length * 2);
+                            }
+                            values[length++] = u;
+                            values[length++] = (int) value;
+                        }
+                        column++;
+                    } else if (b == ' ' || b == '\t' || b == ',' || b == '\r') {
+                        i++;
+                    } else {
+                        throw new IOException("unexpected character 0x" + Integer.toHexString(b & 0xFF)
+                                + " in vertex id column near byte " + (start + i));
+                    }
+                }
+                if (column == 1) {
+                    throw new IOException("line with a single column near byte " + (start + i));
+                }
+            }
+        }
+        chunkEndpoints[chunk] = values;
+        chunkLengths[chunk] = length;
+    }
+}
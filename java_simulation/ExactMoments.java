@@ -0,0 +1,60 @@
+package java_simulation;
+
+import java.math.BigInteger;
+
+/**
+ * 整数値の系列（時刻ごとの人数など）について、要素ごとに和と二乗和を桁あふれなしに積算し、平均と母分散を求める。
+ * <p>
+ * 値は int に収まるので 1 回分の二乗は 2^62 未満になる。和は long（2^32 回まで）、
+ * 二乗和は上位・下位 2 つの long からなる 128 ビット整数で持つ。N = 10^9 でも 2^64 回以上積算できる。
+ * 整数の加算だけなので積算順序に依存せず、結果はスレッド数や終わった順に関係なく同じになる。
+ * 回数は系列で共通なので呼び出し側が数える。同期も呼び出し側で行う。
+ */
+final class ExactMoments {
+
+    private static final BigInteger TWO_TO_64 = BigInteger.ONE.shiftLeft(64);
+
+    private final long[] sum;
+    private final long[] squareSumHigh;
+    private final long[] squareSumLow;
+
+    ExactMoments(int length) {
+        this.sum = new long[length];
+        this.squareSumHigh = new long[length];
+        this.squareSumLow = new long[length];
+    }
+
+    /** index 番目の要素に value を 1 回分足す */
+    void add(int index, int value) {
+        sum[index] += value;
+        long square = (long) value * value;
+        long low = squareSumLow[index] + square;
+        // 下位 64 ビットを符号なしとして足し、桁上がりを上位に送る
+        if (Long.compareUnsigned(low, square) < 0) {
+            squareSumHigh[index]++;
+        }
+        squareSumLow[index] = low;
+    }
+
+    double mean(int index, long count) {
+        return count == 0 ? Double.NaN : (double) sum[index] / count;
+    }
+
+    /** 母分散 (n Σx² - (Σx)²) / n² を桁あふれ・桁落ちなしに求める */
+    double variance(int index, long count) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        BigInteger squareSum = BigInteger.valueOf(squareSumHigh[index]).shiftLeft(64)
+                .add(unsigned(squareSumLow[index]));
+        BigInteger n = BigInteger.valueOf(count);
+        BigInteger s = BigInteger.valueOf(sum[index]);
+        BigInteger numerator = n.multiply(squareSum).subtract(s.multiply(s));
+        return numerator.doubleValue() / ((double) count * count);
+    }
+
+    private static BigInteger unsigned(long value) {
+        BigInteger result = BigInteger.valueOf(value);
+        return value < 0 ? result.add(TWO_TO_64) : result;
+    }
+}
@@ -0,0 +1,94 @@
+package java_simulation;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * {@link SweepMetrics} が出す JDK Flight Recorder のカスタムイベント。
+ * jdk.jfr モジュールを含まない実行環境（jlink で作ったランタイムなど）もあるので、{@link SweepMetrics} は jdk.jfr を
+ * 読み込めたときだけこのクラスを使う。イベントは記録中で有効なときだけ値を詰めて commit する。
+ * <pre>
+ * java -XX:StartFlightRecording=filename=sweep.jfr -jar sar-simulation.jar
+ * jfr print --events java_simulation.Task sweep.jfr
+ * </pre>
+ */
+final class FlightRecorderEvents {
+
+    private FlightRecorderEvents() {
+    }
+
+    @Name("java_simulation.Phase")
+    @Label("SAR Phase")
+    @Category("SAR Simulation")
+    @Description("グラフの生成・読み込み・連結性の判定 1 回分")
+    @StackTrace(false)
+    static final class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+    }
+
+    @Name("java_simulation.Task")
+    @Label("SAR Task")
+    @Category("SAR Simulation")
+    @Description("(α, λ) セルの 1 つのネットワーク上の反復をまとめた 1 タスク分")
+    @StackTrace(false)
+    static final class TaskEvent extends Event {
+        @Label("Batch")
+        int batch;
+        @Label("Alpha")
+        double alpha;
+        @Label("Lambda")
+        double lambda;
+        @Label("Network Iteration")
+        int netIter;
+        @Label("Runs")
+        long runs;
+        @Label("Initialization")
+        @Timespan(Timespan.NANOSECONDS)
+        long initialization;
+        @Label("Steps")
+        @Timespan(Timespan.NANOSECONDS)
+        long steps;
+        @Label("Output")
+        @Timespan(Timespan.NANOSECONDS)
+        long output;
+        @Label("Node Updates")
+        long nodeUpdates;
+        @Label("Edge Traversals")
+        long edgeTraversals;
+    }
+
+    static void phase(String phase, long elapsedNanos) {
+        PhaseEvent event = new PhaseEvent();
+        if (event.isEnabled()) {
+            event.phase = phase;
+            event.elapsed = elapsedNanos;
+            event.commit();
+        }
+    }
+
+    static void task(int batch, double alpha, double lambda, int netIter, SweepMetrics.Tally tally) {
+        TaskEvent event = new TaskEvent();
+        if (event.isEnabled()) {
+            event.batch = batch;
+            event.alpha = alpha;
+            event.lambda = lambda;
+            event.netIter = netIter;
+            event.runs = tally.runs;
+            event.initialization = tally.initializationNanos;
+            event.steps = tally.stepNanos;
+            event.output = tally.outputNanos;
+            event.nodeUpdates = tally.nodeUpdates;
+            event.edgeTraversals = tally.edgeTraversals;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package java_simulation;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import java_simulation.DiscreteTimeTrendEffectSARSimulation.Graph;
+
+/**
+ * スイープ全体で使い回す固定のグラフ集合。
+ * <p>
+ * 全 (α, λ) セルが同じネットワーク群を共有するため、セル間の比較でネットワーク由来の揺らぎが相殺される。
+ * 各グラフは {@link GraphFile} 形式でディレクトリに保存し、同じ設定で再実行したときは生成せずに読み込む。
+ * kernelMode が COMPACT のときはヒープに読み込まず、保存したファイルを {@link OffHeapGraph} としてマップする。
+ * COMPACT で生成するときは 1 つずつ順に生成して保存するので、ヒープに要るのはグラフ 1 つ分だけである。
+ * それも載らないほど大きいグラフは、事前に作った .csr ファイルを graphFile に指定する（そのままマップする）。
+ */
+public class GraphEnsemble {
+
+    /** アンサンブル生成用の乱数ストリーム番号（バッチ番号と衝突しない負の値） */
+    private static final long ENSEMBLE_STREAM = -2;
+
+    /** ヒープ上のグラフ。COMPACT では null */
+    private final Graph[] graphs;
+    /** メモリマップしたグラフ。COMPACT 以外では null */
+    private final OffHeapGraph[] offHeapGraphs;
+
+    private GraphEnsemble(Graph[] graphs, OffHeapGraph[] offHeapGraphs) {
+        this.graphs = graphs;
+        this.offHeapGraphs = offHeapGraphs;
+    }
+
+    /** index 番目のグラフ（COMPACT では null。{@link #getOffHeap} を使う） */
+    public Graph get(int index) {
+        return graphs == null ? null : graphs[index];
+    }
+
+    /** index 番目のグラフ（COMPACT 以外では null） */
+    OffHeapGraph getOffHeap(int index) {
+        return offHeapGraphs == null ? null : offHeapGraphs[index];
+    }
+
+    public int size() {
+        return graphs != null ? graphs.length : offHeapGraphs.length;
+    }
+
+    public int numVertices(int index) {
+        return graphs != null ? graphs[index].addressList.length : offHeapGraphs[index].numVertices();
+    }
+
+    /** index 番目のグラフの経験次数分布 p(k) */
+    public double[] degreeDistribution(int index) {
+        if (graphs != null) {
+            return DiscreteTimeTrendEffectSARSimulation.empiricalDegreeDistribution(graphs[index]);
+        }
+        return DegreeDistribution.fromDegreeSequence(offHeapGraphs[index].degrees()).pk();
+    }
+
+    /**
+     * numBatches × networkIterationCount 個のグラフをディレクトリから読み込む。
+     * ファイルが無いグラフは生成して保存する（COMPACT 以外は並列に、COMPACT は 1 つずつ）。
+     */
+    public static GraphEnsemble buildOrLoad(SimulationConfig config) throws IOException {
+        return buildOrLoad(config, new SweepMetrics());
+    }
+
+    /** 生成・読み込み・保存と連結性の判定にかかった時間を metrics の GRAPH と CONNECTIVITY に足す */
+    public static GraphEnsemble buildOrLoad(SimulationConfig config, SweepMetrics metrics) throws IOException {
+        Path directory = Paths.get(config.graphEnsembleDir);
+        Files.createDirectories(directory);
+        int size = config.numBatches * config.networkIterationCount;
+        long ensembleSeed = RandomStream.deriveSeed(config.seed, ENSEMBLE_STREAM);
+
+        boolean compact = config.kernelMode == SimulationConfig.KernelMode.COMPACT;
+        Graph[] graphs = compact ? null : new Graph[size];
+        OffHeapGraph[] offHeapGraphs = compact ? new OffHeapGraph[size] : null;
+        if (NetworkFactory.FILE.equals(config.graphType)) {
+            // ファイルのグラフは 1 つしかないので、全反復で同じものを共有する
+            if (compact) {
+                Arrays.fill(offHeapGraphs, mapConnectedFile(config, directory, metrics));
+                return new GraphEnsemble(null, offHeapGraphs);
+            }
+            Graph graph = loadConnectedFile(config, metrics);
+            if (graph == null) {
+                throw new IOException("graph is not connected: " + config.graphFile);
+            }
+            Arrays.fill(graphs, graph);
+            return new GraphEnsemble(graphs, null);
+        }
+        if (compact) {
+            // COMPACT は 1 つのグラフもヒープに載せきれないほど大きい場合に使うので、
+            // 並列に生成せず 1 つずつ生成・保存・マップし、ヒープに置くグラフを常に高々 1 つにする
+            for (int index = 0; index < size; index++) {
+                offHeapGraphs[index] = buildOrMap(config, directory, ensembleSeed, index, metrics);
+            }
+            return new GraphEnsemble(null, offHeapGraphs);
+        }
+        ForkJoinPool pool = new ForkJoinPool(config.numThreads);
+        try {
+            pool.submit(() -> IntStream.range(0, size).parallel().forEach(index -> {
+                try {
+                    graphs[index] = buildOrRead(config, directory, ensembleSeed, index, metrics);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            })).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return new GraphEnsemble(graphs, null);
+    }
+
+    /** index 番目のグラフを読み込む。ファイルが無ければ生成して保存し、そのグラフを返す */
+    private static Graph buildOrRead(SimulationConfig config, Path directory, long ensembleSeed, int index,
+                                     SweepMetrics metrics) throws IOException {
+        Path path = directory.resolve(fileName(config, index));
+        Graph graph = Files.exists(path) ? null : generate(config, ensembleSeed, index, metrics);
+        long startTime = System.nanoTime();
+        if (graph != null) {
+            writeAtomically(graph, path);
+        } else {
+            graph = GraphFile.read(path);
+        }
+        metrics.stop(SweepMetrics.Phase.GRAPH, startTime);
+        return graph;
+    }
+
+    /** index 番目のグラフをマップする。ファイルが無ければ生成して保存し、ヒープ上のグラフは捨てる */
+    private static OffHeapGraph buildOrMap(SimulationConfig config, Path directory, long ensembleSeed, int index,
+                                           SweepMetrics metrics) throws IOException {
+        Path path = directory.resolve(fileName(config, index));
+        Graph graph = Files.exists(path) ? null : generate(config, ensembleSeed, index, metrics);
+        long startTime = System.nanoTime();
+        if (graph != null) {
+            writeAtomically(graph, path);
+        }
+        OffHeapGraph mapped = OffHeapGraph.map(path);
+        metrics.stop(SweepMetrics.Phase.GRAPH, startTime);
+        return mapped;
+    }
+
+    private static Graph generate(SimulationConfig config, long ensembleSeed, int index, SweepMetrics metrics) {
+        RandomStream random = new RandomStream(RandomStream.deriveSeed(ensembleSeed, index));
+        return DiscreteTimeTrendEffectSARSimulation.generateConnectedGraph(random, config, metrics);
+    }
+
+    /**
+     * COMPACT でファイルのグラフをマップする。連結な .csr ファイルはそのままマップし、
+     * それ以外（エッジリスト、または最大連結成分に縮めるグラフ）は一度ヒープに読み込んで
+     * 連結にしたものをディレクトリに .csr で保存してからマップする。
+     */
+    private static OffHeapGraph mapConnectedFile(SimulationConfig config, Path directory, SweepMetrics metrics)
+            throws IOException {
+        if (config.graphFile.endsWith(".csr")) {
+            long startTime = System.nanoTime();
+            OffHeapGraph mapped = OffHeapGraph.map(Paths.get(config.graphFile));
+            long checkTime = metrics.stop(SweepMetrics.Phase.GRAPH, startTime);
+            boolean connected = mapped.numVertices() > 0 && mapped.componentCount() == 1;
+            metrics.stop(SweepMetrics.Phase.CONNECTIVITY, checkTime);
+            if (connected) {
+                return mapped;
+            }
+        }
+        Graph graph = loadConnectedFile(config, metrics);
+        if (graph == null) {
+            throw new IOException("graph is not connected: " + config.graphFile);
+        }
+        long startTime = System.nanoTime();
+        Path path = directory.resolve(fileName(config, 0));
+        writeAtomically(graph, path);
+        OffHeapGraph mapped = OffHeapGraph.map(path);
+        metrics.stop(SweepMetrics.Phase.GRAPH, startTime);
+        return mapped;
+    }
+
+    /** ファイルのグラフをヒープに読み込み、{@link DiscreteTimeTrendEffectSARSimulation#ensureConnected} を適用する */
+    private static Graph loadConnectedFile(SimulationConfig config, SweepMetrics metrics) throws IOException {
+        long startTime = System.nanoTime();
+        Graph loaded = NetworkFactory.load(config.graphFile);
+        long checkTime = metrics.stop(SweepMetrics.Phase.GRAPH, startTime);
+        Graph graph = DiscreteTimeTrendEffectSARSimulation.ensureConnected(loaded, config);
+        metrics.stop(SweepMetrics.Phase.CONNECTIVITY, checkTime);
+        return graph;
+    }
+
+    /** 一時ファイルに書いてから path に置き換える */
+    private static void writeAtomically(Graph graph, Path path) throws IOException {
+        // 複数のシャードが同時に同じグラフを作ることがあるので、一時ファイル名はプロセスごとに変える
+        Path temporary = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+        GraphFile.write(graph, temporary);
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** 生成条件をすべてファイル名に含め、条件の違うアンサンブルを取り違えないようにする */
+    static String fileName(SimulationConfig config, int index) {
+        return String.format(Locale.ROOT, "%s_seed%d_%d.csr", config.networkDescription(), config.seed, index);
+    }
+}
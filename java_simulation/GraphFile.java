@@ -0,0 +1,138 @@
+package java_simulation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import java_simulation.DiscreteTimeTrendEffectSARSimulation.Graph;
+
+/**
+ * CSR グラフのバイナリファイル形式（リトルエンディアン）。
+ * <pre>
+ * offset  size          内容
+ * 0       8             マジック "SARCSR01"
+ * 8       4             numVertices (int)
+ * 12      4             予約 (0)
+ * 16      8             edgeList の長さ = 2 × エッジ数 (long)
+ * 24      4 × N         addressList (int[N])
+ * ...     4 × 2E        edgeList (int[2E])
+ * </pre>
+ * cursor は addressList から復元できるので保存しない。
+ * 読み込みはファイルをメモリマップして配列にコピーするため、
+ * 同じファイルを複数のプロセスから読んでもページキャッシュを共有できる。
+ * {@link OffHeapGraph} は配列にコピーせず、マップしたまま使う。
+ */
+final class GraphFile {
+
+    static final byte[] MAGIC = {'S', 'A', 'R', 'C', 'S', 'R', '0', '1'};
+    static final int HEADER_BYTES = 24;
+
+    /** 1 回にメモリマップする最大バイト数（4 の倍数） */
+    private static final long MAP_CHUNK_BYTES = 1L << 30;
+
+    private GraphFile() {
+    }
+
+    static void write(Graph graph, Path path) throws IOException {
+        int numVertices = graph.addressList.length;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.put(MAGIC);
+            header.putInt(numVertices);
+            header.putInt(0);
+            header.putLong(graph.edgeList.length);
+            header.flip();
+            writeFully(channel, header);
+            writeInts(channel, graph.addressList, numVertices);
+            writeInts(channel, graph.edgeList, graph.edgeList.length);
+        }
+    }
+
+    static Graph read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long[] header = readHeader(channel, path);
+            int numVertices = (int) header[0];
+            long edgeSlots = header[1];
+
+            int[] addressList = new int[numVertices];
+            int[] edgeList = new int[(int) edgeSlots];
+            readInts(channel, HEADER_BYTES, addressList);
+            readInts(channel, HEADER_BYTES + 4L * numVertices, edgeList);
+
+            int[] cursor = new int[numVertices];
+            for (int vertex = 0; vertex < numVertices - 1; vertex++) {
+                cursor[vertex] = addressList[vertex + 1];
+            }
+            if (numVertices > 0) {
+                cursor[numVertices - 1] = edgeList.length;
+            }
+            return new Graph(edgeList, addressList, cursor);
+        }
+    }
+
+    /**
+     * ヘッダを読んでファイルの大きさと照合する。
+     *
+     * @return {numVertices, edgeList の長さ}
+     */
+    static long[] readHeader(FileChannel channel, Path path) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                throw new IOException("truncated graph file: " + path);
+            }
+        }
+        header.flip();
+        byte[] magic = new byte[MAGIC.length];
+        header.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("not a CSR graph file: " + path);
+        }
+        int numVertices = header.getInt();
+        header.getInt();
+        long edgeSlots = header.getLong();
+        long expectedSize = HEADER_BYTES + 4L * numVertices + 4L * edgeSlots;
+        if (numVertices < 0 || edgeSlots < 0 || edgeSlots > Integer.MAX_VALUE || channel.size() != expectedSize) {
+            throw new IOException("corrupt graph file: " + path);
+        }
+        return new long[]{numVertices, edgeSlots};
+    }
+
+    private static void writeInts(FileChannel channel, int[] values, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        IntBuffer ints = buffer.asIntBuffer();
+        int offset = 0;
+        while (offset < length) {
+            int count = Math.min(ints.capacity(), length - offset);
+            ints.clear();
+            ints.put(values, offset, count);
+            buffer.clear();
+            buffer.limit(4 * count);
+            writeFully(channel, buffer);
+            offset += count;
+        }
+    }
+
+    private static void readInts(FileChannel channel, long position, int[] values) throws IOException {
+        int offset = 0;
+        while (offset < values.length) {
+            int count = (int) Math.min(MAP_CHUNK_BYTES / 4, values.length - offset);
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position + 4L * offset, 4L * count);
+            mapped.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(values, offset, count);
+            offset += count;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package java_simulation;
+
+/**
+ * カーネルの直前の 1 回の呼び出し（BIT_SLICED では最大 64 回分）の計測値。
+ * カーネルが呼び出しごとに上書きし、{@link ParallelSweepEngine} が読んで {@link SweepMetrics} に足す。
+ * <p>
+ * 数えるのは実際に行った処理の量で、幾何スキップで飛ばした試行は含まない。
+ * BIT_SLICED では 1 語（全レーン）分の処理を 1 と数える。
+ */
+final class KernelCounters {
+
+    /** 初期化（作業配列のリセット、活動家と初期採用者の選出）にかかった時間 */
+    long initializationNanos;
+    /** ステップのループと末尾の埋め合わせにかかった時間 */
+    long stepNanos;
+    /** 状態を判定したノードの延べ数（流行効果で判定した未採用者と、口コミ・回復で走査したフロンティア） */
+    long nodeUpdates;
+    /** 口コミで走査した隣接リストの要素の延べ数 */
+    long edgeTraversals;
+
+    void set(long startTime, long loopStartTime, long nodeUpdates, long edgeTraversals) {
+        long endTime = System.nanoTime();
+        this.initializationNanos = loopStartTime - startTime;
+        this.stepNanos = endTime - loopStartTime;
+        this.nodeUpdates = nodeUpdates;
+        this.edgeTraversals = edgeTraversals;
+    }
+}
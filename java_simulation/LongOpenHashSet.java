@@ -0,0 +1,58 @@
+package java_simulation;
+
+import java.util.Arrays;
+
+/**
+ * 正の long 値だけを格納するオープンアドレス法（線形探索）のハッシュ集合。
+ * エッジ (u, v) を 1 つの long に詰めて重複判定するために使う。0 は空きスロットを表す。
+ */
+final class LongOpenHashSet {
+
+    private long[] table = new long[0];
+    private int mask;
+    private int size;
+
+    /**
+     * 集合を空にし、expectedSize 個を負荷率 1/2 以下で格納できる容量を確保する。
+     */
+    void reset(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize) * 2 - 1) << 1;
+        if (table.length != capacity) {
+            table = new long[capacity];
+        } else {
+            Arrays.fill(table, 0L);
+        }
+        mask = capacity - 1;
+        size = 0;
+    }
+
+    /**
+     * @return key が新たに追加されたら true、既に含まれていたら false
+     */
+    boolean add(long key) {
+        int slot = mix(key) & mask;
+        while (true) {
+            long current = table[slot];
+            if (current == 0L) {
+                table[slot] = key;
+                size++;
+                return true;
+            }
+            if (current == key) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** SplitMix64 の攪拌関数で下位ビットを均す */
+    private static int mix(long key) {
+        long z = key * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 32)) * 0xBF58476D1CE4E5B9L;
+        return (int) (z ^ (z >>> 29));
+    }
+}
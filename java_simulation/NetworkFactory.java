@@ -0,0 +1,130 @@
+package java_simulation;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+
+import java_simulation.DiscreteTimeTrendEffectSARSimulation.Graph;
+
+/**
+ * graphType に応じてグラフを生成・読み込みする。
+ * <ul>
+ *   <li>"ER"：エルデシュ・レーニの G(n, m)（{@code averageDegree}）</li>
+ *   <li>"CM"：配置モデル（{@code degreeDistribution}）</li>
+ *   <li>"FILE"：エッジリストまたは {@link GraphFile} 形式のファイル（{@code graphFile}）</li>
+ * </ul>
+ */
+public final class NetworkFactory {
+
+    public static final String ERDOS_RENYI = "ER";
+    public static final String CONFIGURATION_MODEL = "CM";
+    public static final String FILE = "FILE";
+
+    private NetworkFactory() {
+    }
+
+    static Graph generate(RandomStream random, SimulationConfig config) {
+        switch (config.graphType) {
+            case ERDOS_RENYI:
+                return DiscreteTimeTrendEffectSARSimulation.generateErdosRenyiGraph(
+                        random, config.numVertices, config.averageDegree);
+            case CONFIGURATION_MODEL:
+                return generateConfigurationModel(random, config.numVertices, config.degreeDistribution);
+            case FILE:
+                try {
+                    return load(config.graphFile);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            default:
+                throw new IllegalArgumentException("unknown graphType: " + config.graphType);
+        }
+    }
+
+    /** 拡張子 .csr なら {@link GraphFile}、それ以外はテキストのエッジリストとして読み込む */
+    static Graph load(String path) throws IOException {
+        if (path.endsWith(".csr")) {
+            return GraphFile.read(Paths.get(path));
+        }
+        return EdgeListLoader.load(Paths.get(path));
+    }
+
+    /**
+     * 次数分布から各頂点の次数を独立に抽出し、配置モデルのグラフを生成する。
+     * 次数の総和が奇数なら、偶数になるまで 1 頂点の次数を引き直す。
+     * {@link DegreeDistribution#exactSequence} の分布なら抽出せず、その次数列をそのままつなぐ。
+     */
+    static Graph generateConfigurationModel(RandomStream random, int numVertices, DegreeDistribution distribution) {
+        int[] sequence = distribution.sequence();
+        if (sequence != null) {
+            if (sequence.length != numVertices) {
+                throw new IllegalArgumentException("degree sequence has " + sequence.length
+                        + " vertices but numVertices is " + numVertices);
+            }
+            return generateConfigurationModel(random, sequence);
+        }
+        int[] degrees = new int[numVertices];
+        long stubCount = 0;
+        for (int vertex = 0; vertex < numVertices; vertex++) {
+            degrees[vertex] = distribution.sample(random);
+            stubCount += degrees[vertex];
+        }
+        while ((stubCount & 1) != 0) {
+            int vertex = random.nextInt(numVertices);
+            stubCount -= degrees[vertex];
+            degrees[vertex] = distribution.sample(random);
+            stubCount += degrees[vertex];
+        }
+        return generateConfigurationModel(random, degrees);
+    }
+
+    /**
+     * 次数列 degrees の配置モデル（スタブを一様にランダムにつなぐ）。
+     * 自己ループと多重エッジは取り除く（erased configuration model）。
+     * スタブ配列をそのままエッジの端点配列として詰め直すので、追加の作業配列は重複判定用の集合だけ。
+     */
+    static Graph generateConfigurationModel(RandomStream random, int[] degrees) {
+        int numVertices = degrees.length;
+        long stubCount = 0;
+        for (int degree : degrees) {
+            stubCount += degree;
+        }
+        if ((stubCount & 1) != 0) {
+            throw new IllegalArgumentException("sum of degrees must be even: " + stubCount);
+        }
+        if (stubCount > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("too many stubs: " + stubCount);
+        }
+
+        int[] stubs = new int[(int) stubCount];
+        int position = 0;
+        for (int vertex = 0; vertex < numVertices; vertex++) {
+            for (int i = 0; i < degrees[vertex]; i++) {
+                stubs[position++] = vertex;
+            }
+        }
+        // Fisher–Yates でスタブを並べ替え、隣り合う 2 つをエッジとする
+        for (int i = stubs.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = stubs[i];
+            stubs[i] = stubs[j];
+            stubs[j] = tmp;
+        }
+
+        LongOpenHashSet selectedEdges = new LongOpenHashSet();
+        selectedEdges.reset(stubs.length / 2);
+        int edgeCount = 0;
+        for (int pair = 0; pair < stubs.length / 2; pair++) {
+            int u = stubs[2 * pair];
+            int v = stubs[2 * pair + 1];
+            if (u == v) continue;  // 自己ループ除外
+            long edgeKey = (u < v) ? ((long) u << 32) | v : ((long) v << 32) | u;
+            if (selectedEdges.add(edgeKey)) {
+                stubs[2 * edgeCount] = u;
+                stubs[2 * edgeCount + 1] = v;
+                edgeCount++;
+            }
+        }
+        return CsrBuilder.build(numVertices, stubs, edgeCount);
+    }
+}
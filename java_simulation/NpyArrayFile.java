@@ -0,0 +1,186 @@
+package java_simulation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * NumPy の .npy 形式（version 1.0, C 順）の配列ファイル。
+ * <p>
+ * インスタンスは dtype '&lt;i4' の配列を行単位で逐次書き込むために使う。
+ * 最後の次元を 1 行とし、ファイル全体を行単位で区切ってメモリマップする。
+ * 行ごとに書き込み先が決まっているので、異なる行へは複数スレッドから同時に書いてよい。
+ * 既存の内容を残して開き直せば、中断した書き込みの続きから再開できる。
+ * Python 側では {@code np.load(path, mmap_mode="r")} でコピーせずに読める。
+ */
+final class NpyArrayFile implements AutoCloseable {
+
+    private static final byte[] MAGIC = {(byte) 0x93, 'N', 'U', 'M', 'P', 'Y', 1, 0};
+    /** ヘッダ全体をこの倍数に揃える（.npy 仕様の推奨値） */
+    private static final int HEADER_ALIGNMENT = 64;
+    /** 1 つのマップ領域の最大バイト数 */
+    private static final long MAX_REGION_BYTES = 1L << 30;
+
+    private final FileChannel channel;
+    private final int rowLength;
+    private final int rowsPerRegion;
+    private final IntBuffer[] regions;
+    private final MappedByteBuffer[] mappedRegions;
+
+    /**
+     * @param shape 配列の形状。最後の次元が 1 行の長さになる
+     */
+    NpyArrayFile(Path path, int... shape) throws IOException {
+        this(path, false, shape);
+    }
+
+    /**
+     * @param keepContents true なら同じ形状の既存ファイルの内容を残して開く（無ければ作る）。
+     *                     形状の違う既存ファイルは上書きせず IOException
+     */
+    NpyArrayFile(Path path, boolean keepContents, int... shape) throws IOException {
+        long numRows = 1;
+        for (int i = 0; i < shape.length - 1; i++) {
+            numRows *= shape[i];
+        }
+        this.rowLength = shape[shape.length - 1];
+        long rowBytes = 4L * rowLength;
+        this.rowsPerRegion = (int) Math.max(1, Math.min(Integer.MAX_VALUE, MAX_REGION_BYTES / Math.max(1, rowBytes)));
+
+        byte[] header = header("<i4", shape);
+        boolean reuse = keepContents && Files.exists(path);
+        if (reuse) {
+            this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (channel.size() != header.length + numRows * rowBytes
+                    || !Arrays.equals(readHeader(channel, header.length), header)) {
+                channel.close();
+                throw new IOException("existing file has a different shape: " + path);
+            }
+        } else {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            ByteBuffer headerBuffer = ByteBuffer.wrap(header);
+            while (headerBuffer.hasRemaining()) {
+                channel.write(headerBuffer);
+            }
+        }
+
+        int numRegions = (int) ((numRows + rowsPerRegion - 1) / rowsPerRegion);
+        this.regions = new IntBuffer[numRegions];
+        this.mappedRegions = new MappedByteBuffer[numRegions];
+        for (int region = 0; region < numRegions; region++) {
+            long firstRow = (long) region * rowsPerRegion;
+            long rows = Math.min(rowsPerRegion, numRows - firstRow);
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE,
+                    header.length + firstRow * rowBytes, rows * rowBytes);
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            mappedRegions[region] = mapped;
+            regions[region] = mapped.asIntBuffer();
+        }
+    }
+
+    /** C 順の行番号 row に values[0, rowLength) を書き込む */
+    void writeRow(long row, int[] values) {
+        IntBuffer region = regions[(int) (row / rowsPerRegion)];
+        int offset = (int) (row % rowsPerRegion) * rowLength;
+        for (int i = 0; i < rowLength; i++) {
+            region.put(offset + i, values[i]);
+        }
+    }
+
+    /** C 順の通し番号 index の要素に value を書き込む */
+    void write(long index, int value) {
+        long row = index / rowLength;
+        int offset = (int) (row % rowsPerRegion) * rowLength + (int) (index % rowLength);
+        regions[(int) (row / rowsPerRegion)].put(offset, value);
+    }
+
+    /** 書き込んだ内容をディスクへ書き出す */
+    void force() {
+        for (MappedByteBuffer mapped : mappedRegions) {
+            mapped.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    private static byte[] readHeader(FileChannel channel, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) {
+                break;
+            }
+        }
+        return buffer.array();
+    }
+
+    /** メモリ上の int 配列 values（C 順）をまとめて書き出す */
+    static void writeInts(Path path, int[] values, int... shape) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4 * values.length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asIntBuffer().put(values);
+        writeWhole(path, header("<i4", shape), buffer);
+    }
+
+    /** メモリ上の double 配列 values（C 順）をまとめて書き出す */
+    static void writeDoubles(Path path, double[] values, int... shape) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8 * values.length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asDoubleBuffer().put(values);
+        writeWhole(path, header("<f8", shape), buffer);
+    }
+
+    private static void writeWhole(Path path, byte[] header, ByteBuffer body) throws IOException {
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer headerBuffer = ByteBuffer.wrap(header);
+            while (headerBuffer.hasRemaining()) {
+                out.write(headerBuffer);
+            }
+            while (body.hasRemaining()) {
+                out.write(body);
+            }
+        }
+    }
+
+    /** マジック・バージョン・ヘッダ長・辞書文字列からなる .npy ヘッダを作る */
+    static byte[] header(String descr, int... shape) {
+        StringBuilder shapeText = new StringBuilder("(");
+        for (int i = 0; i < shape.length; i++) {
+            if (i > 0) {
+                shapeText.append(", ");
+            }
+            shapeText.append(shape[i]);
+        }
+        if (shape.length == 1) {
+            shapeText.append(',');
+        }
+        shapeText.append(')');
+        StringBuilder dict = new StringBuilder()
+                .append("{'descr': '").append(descr).append("', 'fortran_order': False, 'shape': ")
+                .append(shapeText)
+                .append(", }");
+        int unpadded = MAGIC.length + 2 + dict.length() + 1;
+        int padding = (HEADER_ALIGNMENT - unpadded % HEADER_ALIGNMENT) % HEADER_ALIGNMENT;
+        for (int i = 0; i < padding; i++) {
+            dict.append(' ');
+        }
+        dict.append('\n');
+        byte[] text = dict.toString().getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer buffer = ByteBuffer.allocate(MAGIC.length + 2 + text.length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(MAGIC);
+        buffer.putShort((short) text.length);
+        buffer.put(text);
+        return buffer.array();
+    }
+}
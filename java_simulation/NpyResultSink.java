@@ -0,0 +1,69 @@
+package java_simulation;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * 結果をバッチごとの .npy ファイルへ逐次書き出すシンク。
+ * <p>
+ * aa_all_results_[batch].npy, ab_all_results_[batch].npy, r_all_results_[batch].npy の 3 ファイルを
+ * 形状 (α, λ, 反復, 時刻) で、各回の止まった時刻を stop_time_[batch].npy に形状 (α, λ, 反復) でメモリマップし、
+ * 1 回分が終わるごとにその行へ書き込む。
+ * 結果をヒープに溜めないため、メモリ使用量はグリッドの大きさに依存しない。
+ */
+public class NpyResultSink implements ResultSink {
+
+    private final int numLambda;
+    private final int iterations;
+    private final NpyArrayFile aaFile;
+    private final NpyArrayFile abFile;
+    private final NpyArrayFile rFile;
+    private final NpyArrayFile stopTimeFile;
+
+    public NpyResultSink(String outputDir, int batchNumber, int numAlpha, int numLambda, int iterations, int maxTime)
+            throws IOException {
+        this.numLambda = numLambda;
+        this.iterations = iterations;
+        Path directory = Paths.get(outputDir);
+        Files.createDirectories(directory);
+        int[] shape = {numAlpha, numLambda, iterations, maxTime + 1};
+        this.aaFile = new NpyArrayFile(directory.resolve(fileName("aa_all_results", batchNumber)), shape);
+        this.abFile = new NpyArrayFile(directory.resolve(fileName("ab_all_results", batchNumber)), shape);
+        this.rFile = new NpyArrayFile(directory.resolve(fileName("r_all_results", batchNumber)), shape);
+        this.stopTimeFile = new NpyArrayFile(directory.resolve(fileName("stop_time", batchNumber)),
+                numAlpha, numLambda, iterations);
+    }
+
+    static String fileName(String baseName, int batchNumber) {
+        return baseName + "_" + batchNumber + ".npy";
+    }
+
+    @Override
+    public void accept(int alphaIdx, int lambdaIdx, int iterationIndex, int[] aa, int[] ab, int[] r, int stopTime) {
+        long row = ((long) alphaIdx * numLambda + lambdaIdx) * iterations + iterationIndex;
+        aaFile.writeRow(row, aa);
+        abFile.writeRow(row, ab);
+        rFile.writeRow(row, r);
+        stopTimeFile.write(row, stopTime);
+    }
+
+    @Override
+    public void close() throws IOException {
+        // 4 ファイルとも確実に閉じる
+        try {
+            aaFile.close();
+        } finally {
+            try {
+                abFile.close();
+            } finally {
+                try {
+                    rFile.close();
+                } finally {
+                    stopTimeFile.close();
+                }
+            }
+        }
+    }
+}
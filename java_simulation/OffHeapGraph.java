@@ -0,0 +1,122 @@
+package java_simulation;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * {@link GraphFile} 形式のファイルをメモリマップしたまま使う読み取り専用の CSR グラフ。
+ * <p>
+ * 配列をヒープにコピーしないので、10⁷～10⁸ 頂点のグラフでもヒープを使わず、
+ * 同じファイルを使うプロセス・スレッドの間でページキャッシュを共有できる。
+ * 隣接リストは連続に並んでいるため、頂点 v の終端は次の頂点の先頭（最後の頂点は edgeList の長さ）で、
+ * {@link DiscreteTimeTrendEffectSARSimulation.Graph#cursor} に当たる配列は持たない。
+ */
+final class OffHeapGraph {
+
+    /** 1 つのマップ領域に入れる int の数の log2（1 GiB） */
+    private static final int REGION_SHIFT = 28;
+    private static final int REGION_MASK = (1 << REGION_SHIFT) - 1;
+
+    private final Path path;
+    private final int numVertices;
+    private final int numEdgeSlots;
+    /** addressList をマップした領域 */
+    private final IntBuffer[] addressRegions;
+    /** edgeList をマップした領域 */
+    private final IntBuffer[] edgeRegions;
+    /** 連結成分数。-1 は未計算 */
+    private int componentCount = -1;
+
+    private OffHeapGraph(Path path, int numVertices, int numEdgeSlots, IntBuffer[] addressRegions,
+                         IntBuffer[] edgeRegions) {
+        this.path = path;
+        this.numVertices = numVertices;
+        this.numEdgeSlots = numEdgeSlots;
+        this.addressRegions = addressRegions;
+        this.edgeRegions = edgeRegions;
+    }
+
+    /** .csr ファイルをメモリマップする。マップはガベージコレクションで解放される */
+    static OffHeapGraph map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long[] header = GraphFile.readHeader(channel, path);
+            int numVertices = (int) header[0];
+            int numEdgeSlots = (int) header[1];
+            IntBuffer[] addressRegions = mapInts(channel, GraphFile.HEADER_BYTES, numVertices);
+            IntBuffer[] edgeRegions = mapInts(channel, GraphFile.HEADER_BYTES + 4L * numVertices, numEdgeSlots);
+            return new OffHeapGraph(path, numVertices, numEdgeSlots, addressRegions, edgeRegions);
+        }
+    }
+
+    private static IntBuffer[] mapInts(FileChannel channel, long position, int length) throws IOException {
+        IntBuffer[] regions = new IntBuffer[Math.max(1, (int) (((long) length + REGION_MASK) >>> REGION_SHIFT))];
+        for (int region = 0; region < regions.length; region++) {
+            long offset = (long) region << REGION_SHIFT;
+            long count = Math.min(1L << REGION_SHIFT, length - offset);
+            regions[region] = channel.map(FileChannel.MapMode.READ_ONLY, position + 4 * offset, 4 * count)
+                    .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        }
+        return regions;
+    }
+
+    Path path() {
+        return path;
+    }
+
+    int numVertices() {
+        return numVertices;
+    }
+
+    /** edgeList の長さ = 2 × エッジ数 */
+    int numEdgeSlots() {
+        return numEdgeSlots;
+    }
+
+    /** 頂点 vertex の隣接リストの先頭 */
+    int start(int vertex) {
+        return addressRegions[vertex >>> REGION_SHIFT].get(vertex & REGION_MASK);
+    }
+
+    /** 頂点 vertex の隣接リストの終端（次の頂点の先頭） */
+    int end(int vertex) {
+        return vertex + 1 < numVertices ? start(vertex + 1) : numEdgeSlots;
+    }
+
+    /** edgeList[slot] */
+    int neighbor(int slot) {
+        return edgeRegions[slot >>> REGION_SHIFT].get(slot & REGION_MASK);
+    }
+
+    /** 各頂点の次数 */
+    int[] degrees() {
+        int[] degrees = new int[numVertices];
+        int start = numVertices > 0 ? start(0) : 0;
+        for (int vertex = 0; vertex < numVertices; vertex++) {
+            int end = end(vertex);
+            degrees[vertex] = end - start;
+            start = end;
+        }
+        return degrees;
+    }
+
+    /** 連結成分数（孤立頂点も 1 つと数える）。初回だけ {@link UnionFind} で数える */
+    synchronized int componentCount() {
+        if (componentCount < 0) {
+            UnionFind components = new UnionFind(numVertices);
+            for (int vertex = 0; vertex < numVertices; vertex++) {
+                for (int i = start(vertex), end = end(vertex); i < end; i++) {
+                    int neighbor = neighbor(i);
+                    if (neighbor > vertex) {
+                        components.union(vertex, neighbor);
+                    }
+                }
+            }
+            componentCount = components.componentCount();
+        }
+        return componentCount;
+    }
+}
@@ -0,0 +1,361 @@
+package java_simulation;
+
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+import java_simulation.DiscreteTimeTrendEffectSARSimulation.Graph;
+
+/**
+ * (α, λ) グリッドを Fork/Join で並列に掃引するエンジン。
+ * <p>
+ * タスクの単位は (セル, netIter) で、1 タスクが 1 つのグラフ
+ * （{@link GraphEnsemble} があればその netIter 番目、無ければ新たに生成したもの。
+ * COMPACT ではグラフ集合のメモリマップしたグラフ）の上で
+ * セルあたりの反復回数だけシミュレーションを実行する。
+ * セルは {@link #run} ではグリッドの (alphaIdx, lambdaIdx)（全体またはその一部）、
+ * {@link #runPoints} では任意の (α, λ) 点の列。
+ * 乱数はタスク・反復ごとにシードから導出した独立ストリームを使うため、
+ * スレッド数や実行順序に関係なく結果はビット単位で再現する。
+ * フェーズごとの時間と処理量はタスクごとに {@link SweepMetrics} へ足し、
+ * 進捗と残り時間の目安を progressIntervalSeconds ごとに表示する。
+ */
+public class ParallelSweepEngine {
+
+    /** グラフ生成の乱数ストリーム番号（反復番号と衝突しない負の値） */
+    private static final long GRAPH_STREAM = -1;
+    /** ビット並列カーネルの乱数ストリーム番号 */
+    private static final long BIT_SLICED_STREAM = -3;
+    /** {@link #runPoints} の点ごとのシードを導出する乱数ストリーム番号（α インデックスと衝突しない負の値） */
+    private static final long POINT_STREAM = -4;
+
+    /** これ以下のタスク数になったら分割せず逐次実行する */
+    private static final int SEQUENTIAL_THRESHOLD = 1;
+
+    private final SimulationConfig config;
+    /** 共有するグラフ集合。null ならタスクごとにグラフを生成する */
+    private final GraphEnsemble ensemble;
+    /** フェーズ別の時間と処理量の集計（複数のエンジン・掃引で共有してよい） */
+    private final SweepMetrics metrics;
+    /** ワーカースレッドごとに使い回すシミュレーションカーネル */
+    private final ThreadLocal<SARStepKernel> kernels;
+    private final ThreadLocal<BitSlicedSARKernel> bitSlicedKernels;
+    private final ThreadLocal<CompactSARKernel> compactKernels;
+
+    public ParallelSweepEngine(SimulationConfig config, GraphEnsemble ensemble) {
+        this(config, ensemble, new SweepMetrics());
+    }
+
+    public ParallelSweepEngine(SimulationConfig config, GraphEnsemble ensemble, SweepMetrics metrics) {
+        this.config = config;
+        this.ensemble = ensemble;
+        this.metrics = metrics;
+        this.kernels = ThreadLocal.withInitial(() -> new SARStepKernel(config));
+        this.bitSlicedKernels = ThreadLocal.withInitial(() -> new BitSlicedSARKernel(config));
+        this.compactKernels = ThreadLocal.withInitial(() -> new CompactSARKernel(config));
+        if (config.kernelMode == SimulationConfig.KernelMode.COMPACT && ensemble == null) {
+            throw new IllegalArgumentException("kernelMode COMPACT maps the graphs of a graph ensemble");
+        }
+    }
+
+    /** 1 回の掃引で実行するセルの一覧。セル c の結果は (alphaIndex[c], lambdaIndex[c]) として sink へ渡す */
+    private static final class Sweep {
+        final int batch;
+        final int numCells;
+        final double[] alphas;
+        final double[] lambdas;
+        final int[] alphaIndex;
+        final int[] lambdaIndex;
+        /** セルのシード。ネットワーク・反復のシードはここから導出する */
+        final long[] cellSeeds;
+        /** ネットワークあたりの最初の反復番号。実行するのは [firstSimIter, firstSimIter + simulationIterations) */
+        final int firstSimIter;
+        final int simulationIterations;
+        final int numTasks;
+        final long totalRuns;
+        final ResultSink sink;
+        final SweepMetrics.CellTable cells;
+        final AtomicLong completedRuns = new AtomicLong();
+        final long startTime = System.nanoTime();
+        /** 次に進捗を表示する時刻 */
+        final AtomicLong nextReportTime;
+
+        Sweep(int batch, double[] alphas, double[] lambdas, int[] alphaIndex, int[] lambdaIndex, long[] cellSeeds,
+              int firstSimIter, int simulationIterations, int networkIterationCount, ResultSink sink,
+              long progressIntervalNanos) {
+            this.batch = batch;
+            this.numCells = alphas.length;
+            this.alphas = alphas;
+            this.lambdas = lambdas;
+            this.alphaIndex = alphaIndex;
+            this.lambdaIndex = lambdaIndex;
+            this.cellSeeds = cellSeeds;
+            this.firstSimIter = firstSimIter;
+            this.simulationIterations = simulationIterations;
+            this.numTasks = numCells * networkIterationCount;
+            this.totalRuns = (long) numTasks * simulationIterations;
+            this.sink = sink;
+            this.cells = new SweepMetrics.CellTable(batch, alphas, lambdas);
+            this.nextReportTime = new AtomicLong(startTime + progressIntervalNanos);
+        }
+    }
+
+    /**
+     * 1 バッチ分のスイープを実行し、各回の結果を終わった順に sink へ渡す。
+     */
+    public void run(int batch, ResultSink sink) {
+        int numCells = config.alphaValues.length * config.lambdaValues.length;
+        int[] cells = new int[numCells];
+        for (int cell = 0; cell < numCells; cell++) {
+            cells[cell] = cell;
+        }
+        run(batch, cells, sink);
+    }
+
+    /**
+     * グリッドのうちセル番号 alphaIdx * numLambda + lambdaIdx が cells に含まれるセルだけを実行する。
+     * 各セルの結果は全グリッドを実行したときと同じになる。
+     */
+    public void run(int batch, int[] cells, ResultSink sink) {
+        int numLambda = config.lambdaValues.length;
+        int numCells = cells.length;
+        long batchSeed = RandomStream.deriveSeed(config.seed, batch);
+        double[] alphas = new double[numCells];
+        double[] lambdas = new double[numCells];
+        int[] alphaIndex = new int[numCells];
+        int[] lambdaIndex = new int[numCells];
+        long[] cellSeeds = new long[numCells];
+        for (int i = 0; i < numCells; i++) {
+            alphaIndex[i] = cells[i] / numLambda;
+            lambdaIndex[i] = cells[i] % numLambda;
+            alphas[i] = config.alphaValues[alphaIndex[i]];
+            lambdas[i] = config.lambdaValues[lambdaIndex[i]];
+            cellSeeds[i] = cellSeed(batchSeed, alphaIndex[i], lambdaIndex[i]);
+        }
+        execute(new Sweep(batch, alphas, lambdas, alphaIndex, lambdaIndex, cellSeeds,
+                0, config.simulationIterationCount, config.networkIterationCount, sink, progressIntervalNanos()));
+    }
+
+    /**
+     * グリッドではなく任意の (α, λ) 点の列について 1 バッチ分を実行する。
+     * 点 i の結果は (alphaIdx = i, lambdaIdx = 0) として sink へ渡す。
+     * 点のシードは並び順ではなく pointKeys[i] から導出するので、同じキーの点は
+     * どの掃引に含まれても同じ結果になる。
+     *
+     * 同じ点に firstSimIter を変えて追加の反復を足せる（{@link AdaptiveSweep} が細分したセルの隅に使う）。
+     *
+     * @param firstSimIter         ネットワークあたりの最初の反復番号。前回の呼び出しの反復回数を渡すと、
+     *                             前回と重ならない乱数ストリームで続きを実行する
+     * @param simulationIterations ネットワークあたりの反復回数（sink へ渡す反復番号は
+     *                             netIter * simulationIterations + (simIter - firstSimIter)）
+     */
+    public void runPoints(int batch, double[] alphas, double[] lambdas, long[] pointKeys, int firstSimIter,
+                          int simulationIterations, ResultSink sink) {
+        int numPoints = alphas.length;
+        long pointRoot = RandomStream.deriveSeed(RandomStream.deriveSeed(config.seed, batch), POINT_STREAM);
+        int[] alphaIndex = new int[numPoints];
+        long[] cellSeeds = new long[numPoints];
+        for (int i = 0; i < numPoints; i++) {
+            alphaIndex[i] = i;
+            cellSeeds[i] = RandomStream.deriveSeed(pointRoot, pointKeys[i]);
+        }
+        execute(new Sweep(batch, alphas, lambdas, alphaIndex, new int[numPoints], cellSeeds,
+                firstSimIter, simulationIterations, config.networkIterationCount, sink, progressIntervalNanos()));
+    }
+
+    private void execute(Sweep sweep) {
+        ForkJoinPool pool = new ForkJoinPool(config.numThreads);
+        try {
+            pool.invoke(new SweepTask(sweep, 0, sweep.numTasks));
+        } finally {
+            pool.shutdown();
+        }
+        metrics.record(sweep.cells);
+    }
+
+    private long progressIntervalNanos() {
+        return config.progressIntervalSeconds * 1_000_000_000L;
+    }
+
+    /** タスク範囲 [from, to) を二分しながら実行するワークスティーリング用タスク */
+    private class SweepTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Sweep sweep;
+        private final int from;
+        private final int to;
+
+        SweepTask(Sweep sweep, int from, int to) {
+            this.sweep = sweep;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SEQUENTIAL_THRESHOLD) {
+                for (int task = from; task < to; task++) {
+                    runNetworkTask(sweep, task);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new SweepTask(sweep, from, mid), new SweepTask(sweep, mid, to));
+        }
+    }
+
+    /**
+     * 1 タスク (セル, netIter) を実行する。
+     * 時系列バッファはタスク内で使い回し、1 回終わるごとに sink へ渡す。
+     * 計測値はタスクの間 {@link SweepMetrics.Tally} に溜め、最後にまとめて足す。進捗もタスクごとに数える。
+     */
+    private void runNetworkTask(Sweep sweep, int task) {
+        int netIter = task % config.networkIterationCount;
+        int cell = task / config.networkIterationCount;
+        double currentAlpha = sweep.alphas[cell];
+        double currentLambda = sweep.lambdas[cell];
+        int alphaIdx = sweep.alphaIndex[cell];
+        int lambdaIdx = sweep.lambdaIndex[cell];
+
+        // セル → ネットワークの順にシードを導出
+        long networkSeed = RandomStream.deriveSeed(sweep.cellSeeds[cell], netIter);
+
+        SweepMetrics.Tally tally = new SweepMetrics.Tally();
+        if (config.kernelMode == SimulationConfig.KernelMode.COMPACT) {
+            OffHeapGraph graph = ensemble.getOffHeap((sweep.batch - 1) * config.networkIterationCount + netIter);
+            runCompact(sweep, graph, alphaIdx, lambdaIdx, currentAlpha, currentLambda, netIter, networkSeed, tally);
+        } else {
+            Graph graph;
+            if (ensemble != null) {
+                graph = ensemble.get((sweep.batch - 1) * config.networkIterationCount + netIter);
+            } else {
+                RandomStream graphRandom = new RandomStream(RandomStream.deriveSeed(networkSeed, GRAPH_STREAM));
+                graph = DiscreteTimeTrendEffectSARSimulation.generateConnectedGraph(graphRandom, config, metrics);
+            }
+            if (config.kernelMode == SimulationConfig.KernelMode.BIT_SLICED) {
+                runBitSliced(sweep, graph, alphaIdx, lambdaIdx, currentAlpha, currentLambda, netIter, networkSeed,
+                        tally);
+            } else {
+                runScalar(sweep, graph, alphaIdx, lambdaIdx, currentAlpha, currentLambda, netIter, networkSeed,
+                        tally);
+            }
+        }
+        metrics.add(sweep.batch, currentAlpha, currentLambda, netIter, tally);
+        sweep.cells.add(cell, tally);
+        reportProgress(sweep, tally.runs);
+    }
+
+    /** 同一ネットワーク上の反復を {@link SARStepKernel} で 1 回ずつ実行する */
+    private void runScalar(Sweep sweep, Graph graph, int alphaIdx, int lambdaIdx, double currentAlpha,
+                           double currentLambda, int netIter, long networkSeed, SweepMetrics.Tally tally) {
+        SARStepKernel kernel = kernels.get();
+        int[] aa = new int[config.maxTime + 1];
+        int[] ab = new int[config.maxTime + 1];
+        int[] r = new int[config.maxTime + 1];
+        int endSimIter = sweep.firstSimIter + sweep.simulationIterations;
+        for (int simIter = sweep.firstSimIter; simIter < endSimIter; simIter++) {
+            int iterationIndex = netIter * sweep.simulationIterations + simIter - sweep.firstSimIter;
+            RandomStream random = new RandomStream(RandomStream.deriveSeed(networkSeed, simIter));
+            int stopTime = kernel.run(graph, currentAlpha, currentLambda, random, aa, ab, r);
+            tally.add(kernel.counters(), 1);
+            long outputStart = System.nanoTime();
+            sweep.sink.accept(alphaIdx, lambdaIdx, iterationIndex, aa, ab, r, stopTime);
+            tally.outputNanos += System.nanoTime() - outputStart;
+        }
+    }
+
+    /**
+     * 同一ネットワーク上の反復を {@link CompactSARKernel} で 1 回ずつ実行する。
+     * 乱数ストリームは SCALAR と同じなので、結果も SCALAR と一致する。
+     */
+    private void runCompact(Sweep sweep, OffHeapGraph graph, int alphaIdx, int lambdaIdx, double currentAlpha,
+                            double currentLambda, int netIter, long networkSeed, SweepMetrics.Tally tally) {
+        CompactSARKernel kernel = compactKernels.get();
+        int[] aa = new int[config.maxTime + 1];
+        int[] ab = new int[config.maxTime + 1];
+        int[] r = new int[config.maxTime + 1];
+        int endSimIter = sweep.firstSimIter + sweep.simulationIterations;
+        for (int simIter = sweep.firstSimIter; simIter < endSimIter; simIter++) {
+            int iterationIndex = netIter * sweep.simulationIterations + simIter - sweep.firstSimIter;
+            RandomStream random = new RandomStream(RandomStream.deriveSeed(networkSeed, simIter));
+            int stopTime = kernel.run(graph, currentAlpha, currentLambda, random, aa, ab, r);
+            tally.add(kernel.counters(), 1);
+            long outputStart = System.nanoTime();
+            sweep.sink.accept(alphaIdx, lambdaIdx, iterationIndex, aa, ab, r, stopTime);
+            tally.outputNanos += System.nanoTime() - outputStart;
+        }
+    }
+
+    /**
+     * 同一ネットワーク上の反復を 64 回ずつまとめてビット並列に実行する。
+     * 乱数は 64 回分の組ごとに 1 本のストリームを使う。
+     */
+    private void runBitSliced(Sweep sweep, Graph graph, int alphaIdx, int lambdaIdx, double currentAlpha,
+                              double currentLambda, int netIter, long networkSeed, SweepMetrics.Tally tally) {
+        BitSlicedSARKernel kernel = bitSlicedKernels.get();
+        int lanes = Math.min(BitSlicedSARKernel.LANES, sweep.simulationIterations);
+        int[][] aa = new int[lanes][config.maxTime + 1];
+        int[][] ab = new int[lanes][config.maxTime + 1];
+        int[][] r = new int[lanes][config.maxTime + 1];
+        int[] stopTimes = new int[lanes];
+        long groupSeed = RandomStream.deriveSeed(networkSeed, BIT_SLICED_STREAM);
+        // 組の番号は firstSimIter 以上の最初の 64 の倍数から数え、前回の端数の組と乱数ストリームを共有しない
+        long firstGroup = (sweep.firstSimIter + BitSlicedSARKernel.LANES - 1) / BitSlicedSARKernel.LANES;
+        for (int first = 0; first < sweep.simulationIterations; first += BitSlicedSARKernel.LANES) {
+            int count = Math.min(BitSlicedSARKernel.LANES, sweep.simulationIterations - first);
+            RandomStream random = new RandomStream(RandomStream.deriveSeed(groupSeed,
+                    firstGroup + first / BitSlicedSARKernel.LANES));
+            kernel.run(graph, currentAlpha, currentLambda, random, count, aa, ab, r, stopTimes);
+            tally.add(kernel.counters(), count);
+            long outputStart = System.nanoTime();
+            for (int lane = 0; lane < count; lane++) {
+                int iterationIndex = netIter * sweep.simulationIterations + first + lane;
+                sweep.sink.accept(alphaIdx, lambdaIdx, iterationIndex, aa[lane], ab[lane], r[lane], stopTimes[lane]);
+            }
+            tally.outputNanos += System.nanoTime() - outputStart;
+        }
+    }
+
+    /**
+     * 1 タスク分の count 回の完了を数え、progressIntervalSeconds ごとと最後のタスクで
+     * 完了回数・経過時間・残り時間の目安（これまでの速さで残りを実行した場合）を表示する。
+     * 表示するのは時刻の更新に成功した 1 スレッドだけ。
+     */
+    private void reportProgress(Sweep sweep, long count) {
+        long done = sweep.completedRuns.addAndGet(count);
+        long now = System.nanoTime();
+        if (done != sweep.totalRuns) {
+            long next = sweep.nextReportTime.get();
+            if (now < next || !sweep.nextReportTime.compareAndSet(next, now + progressIntervalNanos())) {
+                return;
+            }
+        }
+        long elapsedTime = now - sweep.startTime;
+        long remainingTime = (long) ((double) elapsedTime * (sweep.totalRuns - done) / done);
+        System.out.printf(Locale.ROOT, "progress: %d/%d runs (%.1f%%) Elapsed Time: %s ETA: %s (%.1f runs/s)%n",
+                done, sweep.totalRuns, 100.0 * done / sweep.totalRuns, formatDuration(elapsedTime),
+                formatDuration(remainingTime), done / (elapsedTime / 1e9));
+    }
+
+    private static String formatDuration(long nanos) {
+        long totalSeconds = nanos / 1_000_000_000;
+        return String.format("%d hours %d minutes %d seconds",
+                totalSeconds / 3600, (totalSeconds % 3600) / 60, totalSeconds % 60);
+    }
+
+    private static long cellSeed(long batchSeed, int alphaIdx, int lambdaIdx) {
+        return RandomStream.deriveSeed(RandomStream.deriveSeed(batchSeed, alphaIdx), lambdaIdx);
+    }
+
+    /**
+     * SCALAR カーネルで (batch, alphaIdx, lambdaIdx, netIter, simIter) の 1 回分に使う乱数ストリーム。
+     * 同じグラフ（グラフ集合の (batch - 1) * networkIterationCount + netIter 番目）と組み合わせれば、
+     * スイープ全体を実行しなくてもその 1 回だけを再現できる。
+     * 掃引中は同じ経路のシードをバッチ・セル・ネットワークの段ごとに導出して使い回している。
+     */
+    public static RandomStream replicaStream(SimulationConfig config, int batch, int alphaIdx, int lambdaIdx,
+                                             int netIter, int simIter) {
+        return RandomStream.forPath(config.seed, batch, alphaIdx, lambdaIdx, netIter, simIter);
+    }
+}
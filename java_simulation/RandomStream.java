@@ -0,0 +1,104 @@
+package java_simulation;
+
+/**
+ * シミュレーション用の乱数ストリーム（xoshiro256**）。
+ * <p>
+ * {@link java.util.Random} と違い同期も CAS も行わないので、1 スレッドから使う前提で非常に速い。
+ * 状態は 64 ビットのシードを SplitMix64 で展開して作る。
+ * シードは {@link #deriveSeed} で親シードと子インデックスから階層的に導出し、
+ * バッチ → α → λ → ネットワーク → 反復の各段ごとに独立したストリームを割り当てる
+ * （{@link #forPath}）。{@link ParallelSweepEngine#replicaStream} はこの経路で任意の 1 回分のストリームを作り、単独で再現できる。
+ */
+public final class RandomStream {
+
+    private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+    private long s0;
+    private long s1;
+    private long s2;
+    private long s3;
+
+    public RandomStream(long seed) {
+        long z = seed;
+        s0 = mix(z += 0x9E3779B97F4A7C15L);
+        s1 = mix(z += 0x9E3779B97F4A7C15L);
+        s2 = mix(z += 0x9E3779B97F4A7C15L);
+        s3 = mix(z + 0x9E3779B97F4A7C15L);
+    }
+
+    /** root から indices の順にシードを導出したストリーム */
+    public static RandomStream forPath(long root, long... indices) {
+        long seed = root;
+        for (long index : indices) {
+            seed = deriveSeed(seed, index);
+        }
+        return new RandomStream(seed);
+    }
+
+    /**
+     * 親シードと子インデックスから独立したシードを導出する（SplitMix64 の攪拌関数）。
+     */
+    public static long deriveSeed(long parent, long child) {
+        return mix(parent + 0x9E3779B97F4A7C15L * (child + 1));
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    public long nextLong() {
+        long result = Long.rotateLeft(s1 * 5, 7) * 9;
+        long t = s1 << 17;
+        s2 ^= s0;
+        s3 ^= s1;
+        s1 ^= s2;
+        s0 ^= s3;
+        s2 ^= t;
+        s3 = Long.rotateLeft(s3, 45);
+        return result;
+    }
+
+    /** [0, 1) の一様乱数（53 ビット精度） */
+    public double nextDouble() {
+        return (nextLong() >>> 11) * DOUBLE_UNIT;
+    }
+
+    /** values[from, to) を [0, 1) の一様乱数で埋める */
+    public void nextDoubles(double[] values, int from, int to) {
+        for (int i = from; i < to; i++) {
+            values[i] = (nextLong() >>> 11) * DOUBLE_UNIT;
+        }
+    }
+
+    /** [0, bound) の一様な整数（Lemire の乗算法。偏りが出る場合だけ引き直す） */
+    public int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive: " + bound);
+        }
+        long product = (nextLong() >>> 32) * bound;
+        long low = product & 0xFFFFFFFFL;
+        if (low < bound) {
+            long threshold = (0x100000000L - bound) % bound;
+            while (low < threshold) {
+                product = (nextLong() >>> 32) * bound;
+                low = product & 0xFFFFFFFFL;
+            }
+        }
+        return (int) (product >>> 32);
+    }
+
+    /**
+     * values[0, length) の先頭 count 個を、その範囲から一様に選んだ部分集合にする（部分 Fisher–Yates）。
+     * values は [0, length) の並べ替えであればよく、初期化し直す必要はない。
+     */
+    public void selectPrefix(int[] values, int length, int count) {
+        for (int i = 0; i < count; i++) {
+            int j = i + nextInt(length - i);
+            int tmp = values[i];
+            values[i] = values[j];
+            values[j] = tmp;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package java_simulation;
+
+import java.io.IOException;
+
+/**
+ * 終わった 1 回分のシミュレーション結果（時刻0～maxTime の時系列）の受け取り先。
+ * 複数のワーカースレッドから同時に呼ばれるため、実装はスレッドセーフであること。
+ */
+public interface ResultSink extends AutoCloseable {
+
+    /**
+     * @param aa 活動家の採用者数
+     * @param ab 偏屈家の採用者数
+     * @param r  回復者数
+     * @param stopTime 吸収状態などで止まった時刻。これより後の値は stopTime の値と同じ
+     */
+    void accept(int alphaIdx, int lambdaIdx, int iterationIndex, int[] aa, int[] ab, int[] r, int stopTime);
+
+    @Override
+    void close() throws IOException;
+}
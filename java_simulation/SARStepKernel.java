@@ -0,0 +1,360 @@
+package java_simulation;
+
+import java.util.Arrays;
+
+import java_simulation.DiscreteTimeTrendEffectSARSimulation.Graph;
+
+/**
+ * 1 回分の SAR シミュレーションを実行するカーネル。
+ * <p>
+ * 状態・閾値・伝達数はすべてプリミティブ配列で持ち、ワーカースレッドごとに使い回す。
+ * 各ステップでは採用者のフロンティアとその隣接リストだけを走査し、
+ * 流行効果は未採用者リストだけを走査する（採用者 0 人または α = 0 のときは走査しない）。
+ * 状態更新はステップの終わりにまとめて行う同期更新。
+ * <p>
+ * {@link SimulationConfig.SamplingMode#SKIP} では、確率の小さい流行効果と口コミの試行を
+ * 幾何スキップでまとめて引くため、1 ステップの計算量が N や総次数ではなくイベント数に比例する。
+ */
+public class SARStepKernel {
+
+    // 状態：0 = Susceptible, 1 = AdoptedA, 2 = AdoptedB, 3 = RecoveredA, 4 = RecoveredB
+    static final byte SUSCEPTIBLE = 0;
+    static final byte ADOPTED_A = 1;
+    static final byte ADOPTED_B = 2;
+    static final byte RECOVERED_A = 3;
+    static final byte RECOVERED_B = 4;
+
+    /**
+     * 幾何スキップを使う確率の上限。これより大きいと 1 試行あたり 1 回の一様乱数の方が安い
+     */
+    static final double SKIP_SAMPLING_THRESHOLD = 0.25;
+
+    private final SimulationConfig config;
+    private final boolean skipSampling;
+
+    private byte[] nodeStates = new byte[0];
+    private int[] nodeThresholds = new int[0];
+    /** ノードごとの伝達済み隣接ノード数 */
+    private int[] informedCount = new int[0];
+    /** 有向エッジ edgeList[i] がこのランで既に伝達済みなら runStamp が入る */
+    private int[] edgeStamp = new int[0];
+    /** 採用予定として積んだステップ番号（重複登録の防止） */
+    private int[] adoptStamp = new int[0];
+
+    /** 未採用者リストと各ノードのリスト内位置（swap-remove 用） */
+    private int[] susceptibleList = new int[0];
+    private int[] susceptiblePosition = new int[0];
+    private int numSusceptible;
+
+    /** 現在の採用者フロンティアと次ステップ用のバッファ */
+    private int[] frontier = new int[0];
+    private int[] nextFrontier = new int[0];
+    /** このステップで採用に遷移するノード */
+    private int[] toAdopt = new int[0];
+
+    /** 初期化用の頂点順列 */
+    private int[] nodeOrder = new int[0];
+    /** 一括生成した一様乱数（流行効果・回復の判定用） */
+    private double[] uniforms = new double[0];
+
+    private int runStamp;
+    private int stepStamp;
+
+    private final KernelCounters counters = new KernelCounters();
+
+    public SARStepKernel(SimulationConfig config) {
+        this.config = config;
+        this.skipSampling = config.samplingMode == SimulationConfig.SamplingMode.SKIP;
+    }
+
+    /**
+     * 与えられたグラフ上で 1 回分のシミュレーションを実行し、
+     * 活動家・偏屈家の採用者数と回復者数の時系列（時刻0～maxTime）を出力配列に書き込む。
+     * 全員が採用するか、{@link #canChange} でこれ以上状態が変わらないと分かった時刻で止め、
+     * 残りの時刻は最後の値で埋める。
+     *
+     * @return 止まった時刻（maxTime まで進んだときは maxTime）
+     */
+    public int run(Graph graph, double currentAlpha, double currentLambda, RandomStream random,
+                    int[] aaOut, int[] abOut, int[] rOut) {
+        long startTime = System.nanoTime();
+        int numVertices = graph.addressList.length;
+        int maxTime = config.maxTime;
+        double gamma = config.gamma;
+        int[] edgeList = graph.edgeList;
+        int[] addressList = graph.addressList;
+        int[] cursor = graph.cursor;
+        ensureCapacity(numVertices, edgeList.length);
+        nextRunStamp();
+
+        int[] thresholdPair = config.thresholdPair();
+        byte[] nodeStates = this.nodeStates;
+        int[] nodeThresholds = this.nodeThresholds;
+        int[] adoptStamp = this.adoptStamp;
+
+        // 初期閾値設定（すべてthresholdPair[1]で初期化）とアクティビストの選出（確率p）
+        Arrays.fill(nodeThresholds, 0, numVertices, thresholdPair[1]);
+        Arrays.fill(nodeStates, 0, numVertices, SUSCEPTIBLE);
+        Arrays.fill(informedCount, 0, numVertices, 0);
+        int numActivists = (int) (config.p * numVertices);
+        for (int v = 0; v < numVertices; v++) {
+            nodeOrder[v] = v;
+        }
+        random.selectPrefix(nodeOrder, numVertices, numActivists);
+        for (int i = 0; i < numActivists; i++) {
+            nodeThresholds[nodeOrder[i]] = thresholdPair[0];
+        }
+
+        numSusceptible = numVertices;
+        for (int v = 0; v < numVertices; v++) {
+            susceptibleList[v] = v;
+            susceptiblePosition[v] = v;
+        }
+
+        // 初期採用者の設定（初期採用率に基づきランダム選出）
+        int currentAdoptedA = 0;
+        int currentAdoptedB = 0;
+        int frontierSize = 0;
+        int initialAdopters = (int) (config.initialAdoptionRate * numVertices);
+        random.selectPrefix(nodeOrder, numVertices, initialAdopters);
+        for (int i = 0; i < initialAdopters; i++) {
+            int node = nodeOrder[i];
+            if (nodeThresholds[node] == thresholdPair[0]) {
+                nodeStates[node] = ADOPTED_A;
+                currentAdoptedA++;
+            } else {
+                nodeStates[node] = ADOPTED_B;
+                currentAdoptedB++;
+            }
+            removeSusceptible(node);
+            frontier[frontierSize++] = node;
+        }
+
+        int recoveredA = 0;
+        int recoveredB = 0;
+        aaOut[0] = currentAdoptedA;
+        abOut[0] = currentAdoptedB;
+        rOut[0] = 0;
+
+        int timeStep = 0;
+        int totalAdopted = currentAdoptedA + currentAdoptedB;
+        long loopStartTime = System.nanoTime();
+        long nodeUpdates = 0;
+        long edgeTraversals = 0;
+
+        while (timeStep < maxTime && totalAdopted < numVertices
+                && canChange(totalAdopted, currentAlpha, currentLambda, gamma)) {
+            int step = nextStepStamp();
+            int numToAdopt = 0;
+
+            // 流行効果（未採用者のみ走査）
+            double trendProbability = currentAlpha * totalAdopted / numVertices;
+            if (trendProbability > 0) {
+                if (skipSampling && trendProbability < SKIP_SAMPLING_THRESHOLD) {
+                    // 幾何スキップ：選ばれる人数は Binomial(numSusceptible, q)、選ばれる集合は一様
+                    double logComplement = Math.log1p(-trendProbability);
+                    long i = geometricSkip(random, logComplement);
+                    while (i < numSusceptible) {
+                        int node = susceptibleList[(int) i];
+                        adoptStamp[node] = step;
+                        toAdopt[numToAdopt++] = node;
+                        i += 1 + geometricSkip(random, logComplement);
+                    }
+                    nodeUpdates += numToAdopt;
+                } else {
+                    double[] uniforms = this.uniforms;
+                    random.nextDoubles(uniforms, 0, numSusceptible);
+                    for (int i = 0; i < numSusceptible; i++) {
+                        if (uniforms[i] < trendProbability) {
+                            int node = susceptibleList[i];
+                            adoptStamp[node] = step;
+                            toAdopt[numToAdopt++] = node;
+                        }
+                    }
+                    nodeUpdates += numSusceptible;
+                }
+            }
+
+            // 口コミによる情報拡散と回復（採用者フロンティアのみ走査）
+            int nextFrontierSize = 0;
+            int newlyRecoveredA = 0;
+            int newlyRecoveredB = 0;
+            boolean skipTransmission = skipSampling && currentLambda < SKIP_SAMPLING_THRESHOLD;
+            double lambdaLogComplement = Math.log1p(-currentLambda);
+            // フロンティア全体の隣接リストを 1 本の列とみなし、次の伝達までの残りエッジ数を持ち越す
+            long transmissionGap = skipTransmission ? geometricSkip(random, lambdaLogComplement) : 0;
+            // 回復の判定に使う一様乱数はフロンティア分をまとめて引く
+            double[] recoveryDraws = this.uniforms;
+            random.nextDoubles(recoveryDraws, 0, frontierSize);
+            nodeUpdates += frontierSize;
+            for (int f = 0; f < frontierSize; f++) {
+                int node = frontier[f];
+                if (skipTransmission) {
+                    // 幾何スキップ：隣接エッジごとの独立な Bernoulli(λ) 試行と同分布。
+                    // 未採用でない隣接ノードへの試行は捨てるだけなので分布は変わらない
+                    int end = cursor[node];
+                    long i = addressList[node] + transmissionGap;
+                    while (i < end) {
+                        int neighbor = edgeList[(int) i];
+                        if (nodeStates[neighbor] == SUSCEPTIBLE) {
+                            numToAdopt = inform((int) i, neighbor, step, numToAdopt);
+                        }
+                        edgeTraversals++;
+                        i += 1 + geometricSkip(random, lambdaLogComplement);
+                    }
+                    transmissionGap = i - end;
+                } else {
+                    edgeTraversals += cursor[node] - addressList[node];
+                    for (int i = addressList[node]; i < cursor[node]; i++) {
+                        int neighbor = edgeList[i];
+                        if (nodeStates[neighbor] == SUSCEPTIBLE && random.nextDouble() < currentLambda) {
+                            numToAdopt = inform(i, neighbor, step, numToAdopt);
+                        }
+                    }
+                }
+                // 採用状態から回復
+                if (recoveryDraws[f] < gamma) {
+                    if (nodeStates[node] == ADOPTED_A) {
+                        nodeStates[node] = RECOVERED_A;
+                        newlyRecoveredA++;
+                    } else {
+                        nodeStates[node] = RECOVERED_B;
+                        newlyRecoveredB++;
+                    }
+                } else {
+                    nextFrontier[nextFrontierSize++] = node;
+                }
+            }
+
+            // 状態更新
+            for (int i = 0; i < numToAdopt; i++) {
+                int node = toAdopt[i];
+                if (nodeThresholds[node] == thresholdPair[0]) {
+                    nodeStates[node] = ADOPTED_A;
+                    currentAdoptedA++;
+                } else {
+                    nodeStates[node] = ADOPTED_B;
+                    currentAdoptedB++;
+                }
+                removeSusceptible(node);
+                nextFrontier[nextFrontierSize++] = node;
+            }
+            currentAdoptedA -= newlyRecoveredA;
+            currentAdoptedB -= newlyRecoveredB;
+            recoveredA += newlyRecoveredA;
+            recoveredB += newlyRecoveredB;
+
+            int[] swap = frontier;
+            frontier = nextFrontier;
+            nextFrontier = swap;
+            frontierSize = nextFrontierSize;
+
+            // 次の時刻の記録
+            timeStep++;
+            aaOut[timeStep] = currentAdoptedA;
+            abOut[timeStep] = currentAdoptedB;
+            rOut[timeStep] = recoveredA + recoveredB;
+            totalAdopted = currentAdoptedA + currentAdoptedB;
+        } // end timeStep loop
+
+        // 時刻がmaxTimeに達していない場合は、最後の時刻の値を維持
+        Arrays.fill(aaOut, timeStep + 1, maxTime + 1, aaOut[timeStep]);
+        Arrays.fill(abOut, timeStep + 1, maxTime + 1, abOut[timeStep]);
+        Arrays.fill(rOut, timeStep + 1, maxTime + 1, rOut[timeStep]);
+        counters.set(startTime, loopStartTime, nodeUpdates, edgeTraversals);
+        return timeStep;
+    }
+
+    /** 直前の {@link #run} の計測値（次の呼び出しで上書きされる） */
+    KernelCounters counters() {
+        return counters;
+    }
+
+    /**
+     * 次のステップで状態が変わりうるか。採用者がいなければ流行効果・口コミ・回復のどれも起きず、
+     * α・λ・γ がすべて 0 なら採用者がいても何も起きないので、その後の時系列は一定になる。
+     */
+    static boolean canChange(int totalAdopted, double alpha, double lambda, double gamma) {
+        return totalAdopted > 0 && (alpha > 0 || lambda > 0 || gamma > 0);
+    }
+
+    /**
+     * 有向エッジ edgeList[edgeIndex] を通じた伝達を記録し、閾値に達したら採用予定に積む。
+     * 同じ隣接ノードからの 2 回目以降の伝達は数えない。
+     *
+     * @return 更新後の採用予定数
+     */
+    private int inform(int edgeIndex, int neighbor, int step, int numToAdopt) {
+        if (edgeStamp[edgeIndex] != runStamp) {
+            edgeStamp[edgeIndex] = runStamp;
+            informedCount[neighbor]++;
+        }
+        if (informedCount[neighbor] >= nodeThresholds[neighbor] && adoptStamp[neighbor] != step) {
+            adoptStamp[neighbor] = step;
+            toAdopt[numToAdopt++] = neighbor;
+        }
+        return numToAdopt;
+    }
+
+    /**
+     * 成功確率 q の Bernoulli 試行で次の成功までに失敗する回数（幾何分布）を返す。
+     *
+     * @param logComplement log(1 - q)
+     */
+    static long geometricSkip(RandomStream random, double logComplement) {
+        if (logComplement == Double.NEGATIVE_INFINITY) {
+            return 0; // q = 1
+        }
+        if (logComplement == 0) {
+            return Integer.MAX_VALUE; // q = 0
+        }
+        double skip = Math.floor(Math.log(1.0 - random.nextDouble()) / logComplement);
+        return skip >= Integer.MAX_VALUE ? Integer.MAX_VALUE : (long) skip;
+    }
+
+    /** 未採用者リストから node を取り除く */
+    private void removeSusceptible(int node) {
+        int position = susceptiblePosition[node];
+        int last = susceptibleList[--numSusceptible];
+        susceptibleList[position] = last;
+        susceptiblePosition[last] = position;
+    }
+
+    private void nextRunStamp() {
+        if (runStamp == Integer.MAX_VALUE) {
+            Arrays.fill(edgeStamp, 0);
+            runStamp = 0;
+        }
+        runStamp++;
+    }
+
+    private int nextStepStamp() {
+        if (stepStamp == Integer.MAX_VALUE) {
+            Arrays.fill(adoptStamp, 0);
+            stepStamp = 0;
+        }
+        return ++stepStamp;
+    }
+
+    /** グラフの大きさに合わせて作業配列を確保する（足りているときは再利用） */
+    private void ensureCapacity(int numVertices, int numEdgeSlots) {
+        if (nodeStates.length < numVertices) {
+            nodeStates = new byte[numVertices];
+            nodeThresholds = new int[numVertices];
+            informedCount = new int[numVertices];
+            adoptStamp = new int[numVertices];
+            susceptibleList = new int[numVertices];
+            susceptiblePosition = new int[numVertices];
+            frontier = new int[numVertices];
+            nextFrontier = new int[numVertices];
+            toAdopt = new int[numVertices];
+            nodeOrder = new int[numVertices];
+            uniforms = new double[numVertices];
+            stepStamp = 0;
+        }
+        if (edgeStamp.length < numEdgeSlots) {
+            edgeStamp = new int[numEdgeSlots];
+            runStamp = 0;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package java_simulation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * シャードの完了セルを追記していく耐久ジャーナル。
+ * <p>
+ * 1 行目はシャードと掃引の条件（key=value をタブ区切り）、以降は完了したセルを 1 行に 1 つ
+ * "batch cell" の形で追記する。セル番号は alphaIdx * numLambda + lambdaIdx。
+ * 追記のたびに fsync するので、{@link #append} が返った行はプロセスやマシンが落ちても失われない。
+ * 書き込み途中で切れた最後の行は、開き直すときに切り捨てる。
+ */
+final class ShardJournal implements AutoCloseable {
+
+    static final String FILE_NAME = "journal.txt";
+
+    private final Path path;
+    private final FileChannel channel;
+    private final Map<String, String> header;
+    private final int numCells;
+    /** バッチ番号 - 1 ごとの完了セル */
+    private final BitSet[] completed;
+
+    private ShardJournal(Path path, FileChannel channel, Map<String, String> header) {
+        this.path = path;
+        this.channel = channel;
+        this.header = header;
+        this.numCells = intValue("alpha") * intValue("lambda");
+        this.completed = new BitSet[intValue("batches")];
+        for (int batch = 0; batch < completed.length; batch++) {
+            completed[batch] = new BitSet(numCells);
+        }
+    }
+
+    /**
+     * 追記用に開く。無ければ config の条件で作る。
+     * 既存のジャーナルが別の条件で書かれていれば、結果を混ぜないよう IOException にする。
+     */
+    static ShardJournal open(Path path, SimulationConfig config) throws IOException {
+        String expected = headerLine(config);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            String text = readComplete(channel, true);
+            if (text.isEmpty()) {
+                write(channel, expected + "\n");
+                channel.force(true);
+                text = expected + "\n";
+            }
+            String actual = text.substring(0, text.indexOf('\n'));
+            if (!actual.equals(expected)) {
+                throw new IOException("journal was written for a different sweep: " + path
+                        + "\n  journal: " + actual + "\n  current: " + expected);
+            }
+            ShardJournal journal = new ShardJournal(path, channel, parseHeader(actual));
+            journal.load(text);
+            channel.position(channel.size());
+            return journal;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /** 読み取り専用で開く（{@link ShardMerger} 用） */
+    static ShardJournal read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            String text = readComplete(channel, false);
+            if (text.isEmpty()) {
+                throw new IOException("empty journal: " + path);
+            }
+            ShardJournal journal = new ShardJournal(path, null, parseHeader(text.substring(0, text.indexOf('\n'))));
+            journal.load(text);
+            return journal;
+        }
+    }
+
+    /** 最後の改行までを読む。truncate なら途中で切れた最後の行をファイルからも切り捨てる */
+    private static String readComplete(FileChannel channel, boolean truncate) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) {
+                break;
+            }
+        }
+        String text = new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+        int end = text.lastIndexOf('\n') + 1;
+        if (truncate && end < text.length()) {
+            channel.truncate(text.substring(0, end).getBytes(StandardCharsets.UTF_8).length);
+        }
+        return text.substring(0, end);
+    }
+
+    private void load(String text) throws IOException {
+        String[] lines = text.split("\n");
+        for (int i = 1; i < lines.length; i++) {
+            String[] fields = lines[i].split(" ");
+            if (fields.length != 2) {
+                throw new IOException("malformed journal line " + (i + 1) + " in " + path + ": " + lines[i]);
+            }
+            int batch = Integer.parseInt(fields[0]);
+            int cell = Integer.parseInt(fields[1]);
+            if (batch < 1 || batch > completed.length || cell < 0 || cell >= numCells) {
+                throw new IOException("journal line " + (i + 1) + " is out of range in " + path + ": " + lines[i]);
+            }
+            completed[batch - 1].set(cell);
+        }
+    }
+
+    /** 完了したセルを追記し、ディスクに届くまで待つ */
+    synchronized void append(int batch, int[] cells, int count) throws IOException {
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            lines.append(batch).append(' ').append(cells[i]).append('\n');
+        }
+        write(channel, lines.toString());
+        channel.force(false);
+        for (int i = 0; i < count; i++) {
+            completed[batch - 1].set(cells[i]);
+        }
+    }
+
+    synchronized int completedCount(int batch) {
+        return completed[batch - 1].cardinality();
+    }
+
+    /** このシャードが受け持つセルのうち、まだ完了していないもの */
+    synchronized int[] pendingCells(int batch) {
+        int shardIndex = intValue("shard");
+        int shardCount = intValue("shards");
+        return IntStream.range(0, numCells)
+                .filter(cell -> cell % shardCount == shardIndex && !completed[batch - 1].get(cell))
+                .toArray();
+    }
+
+    String value(String key) {
+        String value = header.get(key);
+        if (value == null) {
+            throw new IllegalStateException("journal header has no " + key + ": " + path);
+        }
+        return value;
+    }
+
+    int intValue(String key) {
+        return Integer.parseInt(value(key));
+    }
+
+    /** シャード番号以外の条件（{@link ShardMerger} がシャード間で一致を確かめる） */
+    Map<String, String> sweepConditions() {
+        Map<String, String> conditions = new LinkedHashMap<>(header);
+        conditions.remove("shard");
+        return conditions;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    /**
+     * 結果の形状と乱数系列を決める条件を 1 行にしたもの。
+     * どれかが変わると同じセルでも結果が変わるため、再開時に照合する。
+     */
+    static String headerLine(SimulationConfig config) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("shard", Integer.toString(config.shardIndex));
+        fields.put("shards", Integer.toString(config.shardCount));
+        fields.put("batches", Integer.toString(config.numBatches));
+        fields.put("alpha", Integer.toString(config.alphaValues.length));
+        fields.put("lambda", Integer.toString(config.lambdaValues.length));
+        fields.put("iterations", Integer.toString(config.totalIterations()));
+        fields.put("networkIterations", Integer.toString(config.networkIterationCount));
+        fields.put("maxTime", Integer.toString(config.maxTime));
+        fields.put("network", config.networkDescription());
+        fields.put("ensemble", Boolean.toString(config.useGraphEnsemble));
+        fields.put("seed", Long.toString(config.seed));
+        fields.put("kernel", config.kernelMode.name());
+        fields.put("sampling", config.samplingMode.name());
+        fields.put("parameters", String.format(Locale.ROOT, "p=%s,ta=%d,tb=%d,gamma=%s,rho0=%s",
+                config.p, config.ta, config.tb, config.gamma, config.initialAdoptionRate));
+        fields.put("grid", String.format(Locale.ROOT, "%08x%08x",
+                Arrays.hashCode(config.alphaValues), Arrays.hashCode(config.lambdaValues)));
+        StringBuilder line = new StringBuilder();
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            if (line.length() > 0) {
+                line.append('\t');
+            }
+            line.append(field.getKey()).append('=').append(field.getValue().replace('\t', ' ').replace('\n', ' '));
+        }
+        return line.toString();
+    }
+
+    private static Map<String, String> parseHeader(String line) throws IOException {
+        Map<String, String> fields = new LinkedHashMap<>();
+        for (String field : line.split("\t")) {
+            int separator = field.indexOf('=');
+            if (separator < 0) {
+                throw new IOException("malformed journal header: " + line);
+            }
+            fields.put(field.substring(0, separator), field.substring(separator + 1));
+        }
+        return fields;
+    }
+
+    private static void write(FileChannel channel, String text) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package java_simulation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * シャードの結果を 1 つにまとめる。
+ * <p>
+ * resultsDir/shards/shard_[index]_of_[count] の各シャードについて、ジャーナルの条件が一致し
+ * 受け持つセルがすべて完了していることを確かめてから、分割しない実行と同じ形状
+ * (α, λ, 反復, 時刻) の aa_all_results_[batch].npy, ab_all_results_[batch].npy, r_all_results_[batch].npy と
+ * (α, λ, 反復) の stop_time_[batch].npy を resultsDir に書き出す。あわせてシャード 0 の parameters.csv などを resultsDir にコピーする。
+ * <pre>
+ * java -cp sar-simulation.jar java_simulation.ShardMerger [resultsDir]
+ * </pre>
+ */
+public class ShardMerger {
+
+    private static final String[] TRAJECTORY_NAMES = {"aa_all_results", "ab_all_results", "r_all_results"};
+    private static final String STOP_TIME_NAME = "stop_time";
+    private static final String[] METADATA_FILES = {"parameters.csv", "args.csv", "degree_distribution.csv"};
+
+    public static void main(String[] args) throws IOException {
+        String resultsDir = args.length > 0 ? args[0] : DiscreteTimeTrendEffectSARSimulation.RESULTS_DIR;
+        merge(Paths.get(resultsDir));
+    }
+
+    /** resultsDir のシャードをまとめる。未完了のセルがあれば何も書かずに IOException */
+    public static void merge(Path resultsDir) throws IOException {
+        Map<Integer, Path> shards = findShards(resultsDir);
+        int shardCount = shards.size();
+        ShardJournal[] journals = new ShardJournal[shardCount];
+        for (int shard = 0; shard < shardCount; shard++) {
+            journals[shard] = ShardJournal.read(shards.get(shard).resolve(ShardJournal.FILE_NAME));
+            if (journals[shard].intValue("shard") != shard || journals[shard].intValue("shards") != shardCount) {
+                throw new IOException("journal does not belong to shard " + shard + " of " + shardCount + ": "
+                        + shards.get(shard));
+            }
+            if (!journals[shard].sweepConditions().equals(journals[0].sweepConditions())) {
+                throw new IOException("shards 0 and " + shard + " were run with different settings");
+            }
+        }
+
+        ShardJournal first = journals[0];
+        int numBatches = first.intValue("batches");
+        int numAlpha = first.intValue("alpha");
+        int numLambda = first.intValue("lambda");
+        int iterations = first.intValue("iterations");
+        int timeLength = first.intValue("maxTime") + 1;
+
+        // 先に全シャードの完了を確かめ、欠けた結果を書き出さない
+        StringBuilder missing = new StringBuilder();
+        for (int batch = 1; batch <= numBatches; batch++) {
+            for (int shard = 0; shard < shardCount; shard++) {
+                int pending = journals[shard].pendingCells(batch).length;
+                if (pending > 0) {
+                    missing.append(String.format("%n  batch %d, shard %d: %d cells not finished", batch, shard, pending));
+                }
+            }
+        }
+        if (missing.length() > 0) {
+            throw new IOException("shards are incomplete:" + missing);
+        }
+
+        for (int batch = 1; batch <= numBatches; batch++) {
+            for (String name : TRAJECTORY_NAMES) {
+                mergeFile(resultsDir, shards, NpyResultSink.fileName(name, batch), numAlpha, numLambda,
+                        iterations, timeLength);
+            }
+            mergeFile(resultsDir, shards, NpyResultSink.fileName(STOP_TIME_NAME, batch), numAlpha, numLambda,
+                    iterations);
+            System.out.println("merged batch " + batch + " from " + shardCount + " shards");
+        }
+
+        for (String metadata : METADATA_FILES) {
+            Path source = shards.get(0).resolve(metadata);
+            if (Files.exists(source)) {
+                Files.copy(source, resultsDir.resolve(metadata), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    /**
+     * 各シャードの fileName（形状 (ローカルのセル, cellShape...)）を、形状 (α, λ, cellShape...) の 1 ファイルにまとめる。
+     * 一時ファイルに書いてから置き換えるので、途中で失敗しても中途半端な結果は残らない。
+     */
+    private static void mergeFile(Path resultsDir, Map<Integer, Path> shards, String fileName, int numAlpha,
+                                  int numLambda, int... cellShape) throws IOException {
+        int shardCount = shards.size();
+        int numCells = numAlpha * numLambda;
+        long cellBytes = 4;
+        for (int length : cellShape) {
+            cellBytes *= length;
+        }
+        FileChannel[] inputs = new FileChannel[shardCount];
+        long[] inputHeaders = new long[shardCount];
+        try {
+            for (int shard = 0; shard < shardCount; shard++) {
+                int localCells = ShardResultSink.localCellCount(numCells, shard, shardCount);
+                inputHeaders[shard] = NpyArrayFile.header("<i4", prepend(localCells, cellShape)).length;
+                inputs[shard] = FileChannel.open(shards.get(shard).resolve(fileName), StandardOpenOption.READ);
+                if (inputs[shard].size() != inputHeaders[shard] + localCells * cellBytes) {
+                    throw new IOException("unexpected size: " + shards.get(shard).resolve(fileName));
+                }
+            }
+            Path output = resultsDir.resolve(fileName);
+            Path temporary = resultsDir.resolve(fileName + ".tmp");
+            try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.wrap(
+                        NpyArrayFile.header("<i4", prepend(numAlpha, prepend(numLambda, cellShape))));
+                while (header.hasRemaining()) {
+                    out.write(header);
+                }
+                // セル番号の順に、受け持つシャードからセルのブロックを写す
+                for (int cell = 0; cell < numCells; cell++) {
+                    int shard = cell % shardCount;
+                    long position = inputHeaders[shard] + (long) (cell / shardCount) * cellBytes;
+                    long copied = 0;
+                    while (copied < cellBytes) {
+                        copied += inputs[shard].transferTo(position + copied, cellBytes - copied, out);
+                    }
+                }
+                out.force(true);
+            }
+            Files.move(temporary, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            for (FileChannel input : inputs) {
+                if (input != null) {
+                    input.close();
+                }
+            }
+        }
+    }
+
+    private static int[] prepend(int first, int[] rest) {
+        int[] shape = new int[rest.length + 1];
+        shape[0] = first;
+        System.arraycopy(rest, 0, shape, 1, rest.length);
+        return shape;
+    }
+
+    /** resultsDir/shards 以下のシャードのディレクトリ。シャード数が揃っていなければ IOException */
+    private static Map<Integer, Path> findShards(Path resultsDir) throws IOException {
+        Path shardsDir = resultsDir.resolve(ShardResultSink.SHARDS_DIR);
+        Map<Integer, Path> shards = new TreeMap<>();
+        int shardCount = -1;
+        if (Files.isDirectory(shardsDir)) {
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(shardsDir, "shard_*_of_*")) {
+                for (Path entry : entries) {
+                    String[] parts = entry.getFileName().toString().split("_");
+                    int index = Integer.parseInt(parts[1]);
+                    int count = Integer.parseInt(parts[3]);
+                    if (index >= count || (shardCount >= 0 && count != shardCount)) {
+                        throw new IOException("unexpected shard directory in " + shardsDir + ": " + entry.getFileName());
+                    }
+                    shardCount = count;
+                    shards.put(index, entry);
+                }
+            }
+        }
+        if (shards.isEmpty()) {
+            throw new IOException("no shards in " + shardsDir);
+        }
+        for (int shard = 0; shard < shardCount; shard++) {
+            if (!shards.containsKey(shard)) {
+                throw new IOException("shard " + shard + " of " + shardCount + " is missing in " + shardsDir);
+            }
+        }
+        return shards;
+    }
+}
@@ -0,0 +1,145 @@
+package java_simulation;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * シャード実行用のシンク。
+ * <p>
+ * (α, λ) セルはセル番号 alphaIdx * numLambda + lambdaIdx を shardCount で割った余りでシャードに割り当てる
+ * （α・λ によって重さの違うセルが各シャードに均等に混ざる）。シャードは受け持つセルだけを詰めた
+ * aa_all_results_[batch].npy などを形状 (セル番号 / shardCount, 反復, 時刻)、stop_time_[batch].npy を形状
+ * (セル番号 / shardCount, 反復) でシャードのディレクトリに書き、
+ * セルの全反復が揃ったら、データをディスクへ書き出したうえで {@link ShardJournal} に記録する。
+ * ジャーナルへの記録は checkpointIntervalSeconds 以上の間隔でまとめて行う。
+ * 再開時は既存の .npy を残したまま開き、記録済みのセルは実行しない。
+ */
+public class ShardResultSink implements ResultSink {
+
+    static final String SHARDS_DIR = "shards";
+
+    private final int batch;
+    private final int numLambda;
+    private final int shardCount;
+    private final int iterations;
+    private final ShardJournal journal;
+    private final long checkpointIntervalNanos;
+    private final NpyArrayFile aaFile;
+    private final NpyArrayFile abFile;
+    private final NpyArrayFile rFile;
+    private final NpyArrayFile stopTimeFile;
+    /** 受け持つセルごとの届いた反復数 */
+    private final AtomicIntegerArray received;
+
+    /** 全反復が揃い、まだジャーナルに記録していないセル */
+    private final int[] pendingCells;
+    private int numPending;
+    private long lastCheckpoint = System.nanoTime();
+
+    public ShardResultSink(Path directory, int batch, SimulationConfig config, ShardJournal journal) throws IOException {
+        this.batch = batch;
+        this.numLambda = config.lambdaValues.length;
+        this.shardCount = config.shardCount;
+        this.iterations = config.totalIterations();
+        this.journal = journal;
+        this.checkpointIntervalNanos = config.checkpointIntervalSeconds * 1_000_000_000L;
+        int numLocalCells = localCellCount(config.alphaValues.length * numLambda, config.shardIndex, shardCount);
+        this.received = new AtomicIntegerArray(numLocalCells);
+        this.pendingCells = new int[numLocalCells];
+
+        Files.createDirectories(directory);
+        int[] shape = {numLocalCells, iterations, config.maxTime + 1};
+        Path aaPath = directory.resolve(NpyResultSink.fileName("aa_all_results", batch));
+        Path abPath = directory.resolve(NpyResultSink.fileName("ab_all_results", batch));
+        Path rPath = directory.resolve(NpyResultSink.fileName("r_all_results", batch));
+        Path stopTimePath = directory.resolve(NpyResultSink.fileName("stop_time", batch));
+        if (journal.completedCount(batch) > 0) {
+            for (Path path : new Path[]{aaPath, abPath, rPath, stopTimePath}) {
+                if (!Files.exists(path)) {
+                    throw new IOException("journal lists completed cells of batch " + batch + " but " + path
+                            + " is missing");
+                }
+            }
+        }
+        // 記録済みのセルの行を残すため、既存のファイルは切り詰めずに開く
+        this.aaFile = new NpyArrayFile(aaPath, true, shape);
+        this.abFile = new NpyArrayFile(abPath, true, shape);
+        this.rFile = new NpyArrayFile(rPath, true, shape);
+        this.stopTimeFile = new NpyArrayFile(stopTimePath, true, numLocalCells, iterations);
+    }
+
+    /** シャードのディレクトリ（resultsDir/shards/shard_[index]_of_[count]） */
+    static Path directory(String resultsDir, int shardIndex, int shardCount) {
+        return Paths.get(resultsDir, SHARDS_DIR, "shard_" + shardIndex + "_of_" + shardCount);
+    }
+
+    /** numCells 個のセルのうち shardIndex 番目のシャードが受け持つ数 */
+    static int localCellCount(int numCells, int shardIndex, int shardCount) {
+        return (numCells - shardIndex + shardCount - 1) / shardCount;
+    }
+
+    @Override
+    public void accept(int alphaIdx, int lambdaIdx, int iterationIndex, int[] aa, int[] ab, int[] r, int stopTime) {
+        int cell = alphaIdx * numLambda + lambdaIdx;
+        int localCell = cell / shardCount;
+        long row = (long) localCell * iterations + iterationIndex;
+        aaFile.writeRow(row, aa);
+        abFile.writeRow(row, ab);
+        rFile.writeRow(row, r);
+        stopTimeFile.write(row, stopTime);
+        if (received.incrementAndGet(localCell) == iterations) {
+            cellCompleted(cell);
+        }
+    }
+
+    private synchronized void cellCompleted(int cell) {
+        pendingCells[numPending++] = cell;
+        if (System.nanoTime() - lastCheckpoint >= checkpointIntervalNanos) {
+            try {
+                checkpoint();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /** 揃ったセルの行をディスクへ書き出してから、ジャーナルに記録する */
+    private synchronized void checkpoint() throws IOException {
+        lastCheckpoint = System.nanoTime();
+        if (numPending == 0) {
+            return;
+        }
+        aaFile.force();
+        abFile.force();
+        rFile.force();
+        stopTimeFile.force();
+        journal.append(batch, pendingCells, numPending);
+        numPending = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // 途中で失敗しても、揃ったセルは記録してから閉じる
+        try {
+            checkpoint();
+        } finally {
+            try {
+                aaFile.close();
+            } finally {
+                try {
+                    abFile.close();
+                } finally {
+                    try {
+                        rFile.close();
+                    } finally {
+                        stopTimeFile.close();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package java_simulation;
+
+import java.nio.file.Paths;
+
+/**
+ * スイープ全体で共有するシミュレーション設定。
+ * 値は main で組み立て、各ワーカーからは読み取り専用として扱う。
+ */
+public class SimulationConfig {
+
+    /** 流行効果・口コミの乱数の引き方 */
+    public enum SamplingMode {
+        /** 試行ごとに一様乱数を 1 回引く */
+        BERNOULLI,
+        /** 確率が小さいときは幾何スキップでイベントの位置だけを引く（分布は BERNOULLI と同じ） */
+        SKIP
+    }
+
+    /** 1 回分のシミュレーションの実行方法 */
+    public enum KernelMode {
+        /** 1 回ずつ {@link SARStepKernel} で実行する */
+        SCALAR,
+        /** 最大 64 回分を {@link BitSlicedSARKernel} でビット並列に同時実行する（分布は SCALAR と同じ） */
+        BIT_SLICED,
+        /**
+         * 1 回ずつ {@link CompactSARKernel} で実行する大規模ネットワーク用のモード（結果は SCALAR とビット単位で一致）。
+         * グラフ集合の .csr ファイルを {@link OffHeapGraph} としてメモリマップしたまま使い、ヒープには載せない
+         */
+        COMPACT
+    }
+
+    /** 結果の出力形式 */
+    public enum OutputMode {
+        /** 全反復の時系列をそのまま .npy に書き出す */
+        TRAJECTORIES,
+        /** セルごとの平均・分散と最終伝播規模のヒストグラムだけを書き出す */
+        AGGREGATE
+    }
+
+    /** (α, λ) の掃引方法 */
+    public enum SweepMode {
+        /** alphaValues × lambdaValues の全セルを同じ反復回数で実行する */
+        GRID,
+        /** alphaValues × lambdaValues を粗いグリッドとして実行し、最終伝播規模が急変する区間だけを細分する（{@link AdaptiveSweep}） */
+        ADAPTIVE
+    }
+
+    /** 連結でないグラフの扱い */
+    public enum ConnectivityMode {
+        /** 連結なグラフが得られるまで生成し直す */
+        REJECT,
+        /** 最大連結成分だけを残し、頂点番号を詰め直す（頂点数はグラフごとに N 以下になる） */
+        LARGEST_COMPONENT
+    }
+
+    // -------------------- グラフ生成パラメータ --------------------
+    /** "ER", "CM", "FILE" のいずれか（{@link NetworkFactory} を参照） */
+    public String graphType = NetworkFactory.ERDOS_RENYI;
+    public int numVertices = 10000;
+    /** graphType = "ER" のときの平均次数 */
+    public double averageDegree = 10;
+    /** graphType = "CM" のときの次数分布 */
+    public DegreeDistribution degreeDistribution = DegreeDistribution.poisson(10, 40);
+    /** graphType = "FILE" のときのエッジリストまたは .csr ファイルのパス */
+    public String graphFile;
+    /** 連結でないグラフを生成し直すか、最大連結成分に縮めるか */
+    public ConnectivityMode connectivityMode = ConnectivityMode.REJECT;
+    /** true なら固定のグラフ集合を全 (α, λ) セルで共有する。false ならセル・反復ごとに生成する */
+    public boolean useGraphEnsemble = true;
+    /** グラフ集合を保存・読み込みするディレクトリ */
+    public String graphEnsembleDir = "simulation_results/graphs";
+
+    // -------------------- シミュレーションパラメータ --------------------
+    public int maxTime = 100;
+    public int numBatches = 1;
+    public int networkIterationCount = 4;
+    public int simulationIterationCount = 25;
+    public double initialAdoptionRate = 1.0 / numVertices;
+    public double gamma = 1.0;
+    public double p = 0.2;
+    public int ta = 1;
+    public int tb = 4;
+    public SamplingMode samplingMode = SamplingMode.BERNOULLI;
+    public KernelMode kernelMode = KernelMode.SCALAR;
+
+    // -------------------- 出力 --------------------
+    public OutputMode outputMode = OutputMode.TRAJECTORIES;
+    /** AGGREGATE モードでの最終伝播規模ヒストグラムの bin 数 */
+    public int finalSizeBins = 100;
+    /** true ならシミュレーション後に同じグリッドで EBCM を解き、ebcm_*.npy を出力する */
+    public boolean solveEbcm = true;
+    /** EBCM の RK4 で単位時間あたりに刻むステップ数（1 で Python 版と同じ刻み幅） */
+    public int ebcmSubsteps = 1;
+    /** 掃引中に進捗と残り時間の目安を表示する間隔（秒） */
+    public int progressIntervalSeconds = 10;
+
+    // -------------------- スイープ範囲 --------------------
+    /** 等間隔の α の値（ADAPTIVE では粗いグリッド） */
+    public double[] alphaValues;
+    /** 等間隔の λ の値（ADAPTIVE では粗いグリッド） */
+    public double[] lambdaValues;
+    public SweepMode sweepMode = SweepMode.GRID;
+    /** ADAPTIVE の細分回数。1 回ごとに刻み幅が半分になる */
+    public int adaptiveLevels = 4;
+    /** セルの隅の平均最終伝播規模 / N の差がこれを超えたらそのセルを細分する */
+    public double adaptiveJumpThreshold = 0.1;
+    /** N/2 未満で終わる回と N/2 以上に広がる回の少ない方の割合がこれ以上なら二峰的とみなし、その境界を細分する */
+    public double adaptiveMinorityModeShare = 0.1;
+    /** 細分 1 回ごとに simulationIterationCount を何倍にするか */
+    public int adaptiveIterationGrowth = 2;
+
+    // -------------------- 並列実行 --------------------
+    /** 全乱数ストリームの元になるシード。同じ値なら並列数に関係なく同じ結果になる */
+    public long seed = 20240601L;
+    /** ワーカースレッド数 */
+    public int numThreads = Runtime.getRuntime().availableProcessors();
+    /**
+     * シャード数。0 ならシャードに分けず、結果を直接書き出す。
+     * 1 以上なら (α, λ) セルを shardCount 個に分け、このプロセスは shardIndex 番目だけを実行する
+     * （{@link ShardResultSink}。結果は {@link ShardMerger} でまとめる）
+     */
+    public int shardCount = 0;
+    public int shardIndex = 0;
+    /** シャード実行で完了セルをジャーナルに記録する最小間隔（秒）。中断したときに失うのは高々この時間分 */
+    public int checkpointIntervalSeconds = 30;
+
+    /** ネットワークの生成条件を表す短い文字列（グラフ集合のファイル名にも使う） */
+    public String networkDescription() {
+        String suffix = connectivityMode == ConnectivityMode.LARGEST_COMPONENT ? "_lcc" : "";
+        switch (graphType) {
+            case NetworkFactory.CONFIGURATION_MODEL:
+                return graphType + "_n" + numVertices + "_" + degreeDistribution + suffix;
+            case NetworkFactory.FILE:
+                return graphType + "_" + Paths.get(graphFile).getFileName() + suffix;
+            default:
+                return graphType + "_n" + numVertices + "_k" + averageDegree + suffix;
+        }
+    }
+
+    public int totalIterations() {
+        return networkIterationCount * simulationIterationCount;
+    }
+
+    public int[] thresholdPair() {
+        return new int[]{ta, tb};
+    }
+}
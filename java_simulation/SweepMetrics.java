@@ -0,0 +1,235 @@
+package java_simulation;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * スイープ全体のフェーズ別の時間と処理量の集計。
+ * <p>
+ * フェーズごとの時間（スレッドの延べ時間）と回数、実行回数・ノード更新数・エッジ走査数を {@link LongAdder} で数える。
+ * ワーカーはタスク (セル, netIter) の分を {@link Tally} に溜めてから足すので、共有カウンタの更新はタスクごとに 1 回で済む。
+ * (α, λ) セルごとの値は {@link CellTable} にまとめ、掃引が終わるたびに {@link #record} する。
+ * jdk.jfr を読み込める実行環境では、フェーズとタスクごとに {@link FlightRecorderEvents} のイベントも出す。
+ */
+public final class SweepMetrics {
+
+    /** 計測するフェーズ */
+    public enum Phase {
+        /** グラフの生成・読み込み・保存 */
+        GRAPH,
+        /** 連結性の判定と最大連結成分の取り出し */
+        CONNECTIVITY,
+        /** カーネルの初期化（作業配列のリセット、活動家と初期採用者の選出） */
+        INITIALIZATION,
+        /** カーネルのステップのループ */
+        STEPS,
+        /** 結果シンクへの受け渡し（TRAJECTORIES ではファイルへの書き込みを含む） */
+        OUTPUT
+    }
+
+    private static final boolean FLIGHT_RECORDER = flightRecorderAvailable();
+
+    private final long startTime = System.nanoTime();
+    private final LongAdder[] phaseNanos = new LongAdder[Phase.values().length];
+    private final LongAdder[] phaseCounts = new LongAdder[Phase.values().length];
+    private final LongAdder runs = new LongAdder();
+    private final LongAdder nodeUpdates = new LongAdder();
+    private final LongAdder edgeTraversals = new LongAdder();
+    /** metrics_cells.csv の行 */
+    private final List<String> cellRows = new ArrayList<>();
+    private int sweeps;
+
+    public SweepMetrics() {
+        for (int i = 0; i < phaseNanos.length; i++) {
+            phaseNanos[i] = new LongAdder();
+            phaseCounts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * startTime から現在までの時間を phase に 1 回分として足す。
+     *
+     * @return 現在時刻（続くフェーズの開始時刻に使える）
+     */
+    long stop(Phase phase, long startTime) {
+        long now = System.nanoTime();
+        long elapsed = now - startTime;
+        phaseNanos[phase.ordinal()].add(elapsed);
+        phaseCounts[phase.ordinal()].increment();
+        if (FLIGHT_RECORDER) {
+            FlightRecorderEvents.phase(phase.name(), elapsed);
+        }
+        return now;
+    }
+
+    /** 1 タスク分の計測値。ワーカーがタスクの間だけ持つ */
+    static final class Tally {
+        /** カーネルの呼び出し回数 */
+        long calls;
+        long runs;
+        long initializationNanos;
+        long stepNanos;
+        long outputNanos;
+        long nodeUpdates;
+        long edgeTraversals;
+
+        /** runs 回分を実行したカーネルの呼び出し 1 回の計測値を足す */
+        void add(KernelCounters counters, int runs) {
+            this.calls++;
+            this.runs += runs;
+            this.initializationNanos += counters.initializationNanos;
+            this.stepNanos += counters.stepNanos;
+            this.nodeUpdates += counters.nodeUpdates;
+            this.edgeTraversals += counters.edgeTraversals;
+        }
+
+        long busyNanos() {
+            return initializationNanos + stepNanos + outputNanos;
+        }
+    }
+
+    /** タスク (セル, netIter) 1 つ分を足す */
+    void add(int batch, double alpha, double lambda, int netIter, Tally tally) {
+        phaseNanos[Phase.INITIALIZATION.ordinal()].add(tally.initializationNanos);
+        phaseCounts[Phase.INITIALIZATION.ordinal()].add(tally.calls);
+        phaseNanos[Phase.STEPS.ordinal()].add(tally.stepNanos);
+        phaseCounts[Phase.STEPS.ordinal()].add(tally.calls);
+        phaseNanos[Phase.OUTPUT.ordinal()].add(tally.outputNanos);
+        phaseCounts[Phase.OUTPUT.ordinal()].add(tally.runs);
+        runs.add(tally.runs);
+        nodeUpdates.add(tally.nodeUpdates);
+        edgeTraversals.add(tally.edgeTraversals);
+        if (FLIGHT_RECORDER) {
+            FlightRecorderEvents.task(batch, alpha, lambda, netIter, tally);
+        }
+    }
+
+    /** 1 回の掃引のセルごとの集計。セル c は (alphas[c], lambdas[c]) */
+    static final class CellTable {
+        final int batch;
+        final double[] alphas;
+        final double[] lambdas;
+        final AtomicLongArray runs;
+        final AtomicLongArray busyNanos;
+        final AtomicLongArray nodeUpdates;
+        final AtomicLongArray edgeTraversals;
+
+        CellTable(int batch, double[] alphas, double[] lambdas) {
+            this.batch = batch;
+            this.alphas = alphas;
+            this.lambdas = lambdas;
+            this.runs = new AtomicLongArray(alphas.length);
+            this.busyNanos = new AtomicLongArray(alphas.length);
+            this.nodeUpdates = new AtomicLongArray(alphas.length);
+            this.edgeTraversals = new AtomicLongArray(alphas.length);
+        }
+
+        void add(int cell, Tally tally) {
+            runs.addAndGet(cell, tally.runs);
+            busyNanos.addAndGet(cell, tally.busyNanos());
+            nodeUpdates.addAndGet(cell, tally.nodeUpdates);
+            edgeTraversals.addAndGet(cell, tally.edgeTraversals);
+        }
+    }
+
+    /** 終わった掃引のセルごとの値を metrics_cells.csv の行として残す */
+    synchronized void record(CellTable table) {
+        int sweep = sweeps++;
+        for (int cell = 0; cell < table.alphas.length; cell++) {
+            double seconds = table.busyNanos.get(cell) / 1e9;
+            cellRows.add(String.format(Locale.ROOT, "%d,%d,%s,%s,%d,%.6f,%.1f,%.1f,%.1f", sweep, table.batch,
+                    table.alphas[cell], table.lambdas[cell], table.runs.get(cell), seconds,
+                    rate(table.runs.get(cell), seconds), rate(table.nodeUpdates.get(cell), seconds),
+                    rate(table.edgeTraversals.get(cell), seconds)));
+        }
+    }
+
+    /**
+     * 計測結果を directory に書き出す。
+     * <ul>
+     *   <li>metrics_summary.csv：経過時間、フェーズごとの延べ時間・回数・割合、実行回数・ノード更新数・エッジ走査数と
+     *       経過時間あたりの値</li>
+     *   <li>metrics_cells.csv：掃引・セルごとの実行回数、ワーカーの延べ時間と、その時間あたりの実行回数・ノード更新数・エッジ走査数</li>
+     * </ul>
+     */
+    synchronized void writeSummary(Path directory, int numThreads) throws IOException {
+        double wallSeconds = (System.nanoTime() - startTime) / 1e9;
+        long totalPhaseNanos = 0;
+        for (LongAdder nanos : phaseNanos) {
+            totalPhaseNanos += nanos.sum();
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(
+                directory.resolve("metrics_summary.csv"), StandardCharsets.UTF_8)) {
+            writer.write("metric,value");
+            writer.newLine();
+            writeMetric(writer, "wall_seconds", wallSeconds);
+            writeMetric(writer, "threads", numThreads);
+            for (Phase phase : Phase.values()) {
+                String name = phase.name().toLowerCase(Locale.ROOT);
+                long nanos = phaseNanos[phase.ordinal()].sum();
+                writeMetric(writer, name + "_seconds", nanos / 1e9);
+                writeMetric(writer, name + "_count", phaseCounts[phase.ordinal()].sum());
+                writeMetric(writer, name + "_share", totalPhaseNanos > 0 ? (double) nanos / totalPhaseNanos : 0.0);
+            }
+            writeMetric(writer, "runs", runs.sum());
+            writeMetric(writer, "node_updates", nodeUpdates.sum());
+            writeMetric(writer, "edge_traversals", edgeTraversals.sum());
+            writeMetric(writer, "runs_per_second", rate(runs.sum(), wallSeconds));
+            writeMetric(writer, "node_updates_per_second", rate(nodeUpdates.sum(), wallSeconds));
+            writeMetric(writer, "edge_traversals_per_second", rate(edgeTraversals.sum(), wallSeconds));
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(
+                directory.resolve("metrics_cells.csv"), StandardCharsets.UTF_8)) {
+            writer.write("sweep,batch,alpha,lambda,runs,busy_seconds,runs_per_second,"
+                    + "node_updates_per_second,edge_traversals_per_second");
+            writer.newLine();
+            for (String row : cellRows) {
+                writer.write(row);
+                writer.newLine();
+            }
+        }
+    }
+
+    /** フェーズごとの延べ時間と割合、経過時間あたりの処理量を表示する */
+    void printSummary() {
+        double wallSeconds = (System.nanoTime() - startTime) / 1e9;
+        long totalPhaseNanos = 0;
+        for (LongAdder nanos : phaseNanos) {
+            totalPhaseNanos += nanos.sum();
+        }
+        for (Phase phase : Phase.values()) {
+            long nanos = phaseNanos[phase.ordinal()].sum();
+            System.out.printf(Locale.ROOT, "phase %-14s %10.1f s %5.1f%%%n", phase.name().toLowerCase(Locale.ROOT),
+                    nanos / 1e9, totalPhaseNanos > 0 ? 100.0 * nanos / totalPhaseNanos : 0.0);
+        }
+        System.out.printf(Locale.ROOT, "throughput: %.1f runs/s, %.3g node updates/s, %.3g edge traversals/s%n",
+                rate(runs.sum(), wallSeconds), rate(nodeUpdates.sum(), wallSeconds),
+                rate(edgeTraversals.sum(), wallSeconds));
+    }
+
+    private static void writeMetric(BufferedWriter writer, String name, Object value) throws IOException {
+        writer.write(name + "," + value);
+        writer.newLine();
+    }
+
+    private static double rate(long count, double seconds) {
+        return seconds > 0 ? count / seconds : 0.0;
+    }
+
+    private static boolean flightRecorderAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+}
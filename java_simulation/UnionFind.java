@@ -0,0 +1,59 @@
+package java_simulation;
+
+import java.util.Arrays;
+
+/**
+ * 頂点の連結成分を追跡する素集合データ構造（union by size + 経路半減）。
+ * parent[x] は x が根なら -(成分の大きさ)、それ以外は親の頂点番号。
+ */
+final class UnionFind {
+
+    private final int[] parent;
+    private int componentCount;
+
+    UnionFind(int numVertices) {
+        parent = new int[numVertices];
+        Arrays.fill(parent, -1);
+        componentCount = numVertices;
+    }
+
+    int find(int x) {
+        while (parent[x] >= 0) {
+            int next = parent[x];
+            if (parent[next] < 0) {
+                return next;
+            }
+            parent[x] = parent[next];
+            x = parent[x];
+        }
+        return x;
+    }
+
+    /** a と b の成分を併合する。すでに同じ成分なら false */
+    boolean union(int a, int b) {
+        int rootA = find(a);
+        int rootB = find(b);
+        if (rootA == rootB) {
+            return false;
+        }
+        if (parent[rootA] > parent[rootB]) {
+            int tmp = rootA;
+            rootA = rootB;
+            rootB = tmp;
+        }
+        parent[rootA] += parent[rootB];
+        parent[rootB] = rootA;
+        componentCount--;
+        return true;
+    }
+
+    /** x を含む成分の頂点数 */
+    int componentSize(int x) {
+        return -parent[find(x)];
+    }
+
+    /** 連結成分数（孤立頂点も 1 つの成分と数える） */
+    int componentCount() {
+        return componentCount;
+    }
+}
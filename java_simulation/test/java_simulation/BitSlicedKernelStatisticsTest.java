@@ -0,0 +1,179 @@
+package java_simulation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java_simulation.DiscreteTimeTrendEffectSARSimulation.Graph;
+
+/**
+ * {@link BitSlicedSARKernel} は乱数の消費順が違うので個々の時系列は {@link SARStepKernel} と一致しないが、
+ * 結果の分布は同じになることを確かめる。
+ * <p>
+ * 最終伝播規模の平均・分散は標準誤差の {@link #Z} 倍以内、止まった時刻の分布は 2 標本 Kolmogorov–Smirnov 統計量が
+ * 有意水準 0.1% の棄却限界以内であることを見る。シードは固定なので結果は毎回同じ。
+ */
+class BitSlicedKernelStatisticsTest {
+
+    /** 平均・分散の差の許容幅（標準誤差の何倍か） */
+    private static final double Z = 5.0;
+    /** 有意水準 0.1% の 2 標本 KS 検定の係数 c(α) */
+    private static final double KS_COEFFICIENT = 1.95;
+    /** カーネルごとの実行回数（64 の倍数） */
+    private static final int RUNS = 1280;
+
+    private static final double[][] POINTS = {{0.0, 0.1}, {0.0, 0.3}, {0.2, 0.15}, {0.6, 0.05}};
+
+    @Test
+    void matchesScalarKernel() {
+        assertSameDistributions(smallConfig());
+    }
+
+    @Test
+    void matchesScalarKernelWithRecovery() {
+        SimulationConfig config = smallConfig();
+        config.gamma = 0.3;
+        config.ta = 2;
+        config.tb = 3;
+        assertSameDistributions(config);
+    }
+
+    @Test
+    void bernoulliMaskLaneFrequencies() {
+        int draws = 20000;
+        // 奇数レーンだけを指定し、指定外のレーンが立たないことも見る
+        long lanes = 0xAAAAAAAAAAAAAAAAL;
+        for (double p : new double[]{0.0, 1e-3, 0.1, 0.3, 0.5, 0.77, 1.0}) {
+            long threshold = BitSlicedSARKernel.probabilityThreshold(p);
+            RandomStream random = new RandomStream(RandomStream.deriveSeed(11, Double.doubleToLongBits(p)));
+            int[] hits = new int[BitSlicedSARKernel.LANES];
+            int pairHits = 0;
+            for (int k = 0; k < draws; k++) {
+                long mask = BitSlicedSARKernel.bernoulliMask(random, threshold, lanes);
+                assertEquals(0, mask & ~lanes, "lanes outside the request, p=" + p);
+                for (int lane = 0; lane < BitSlicedSARKernel.LANES; lane++) {
+                    hits[lane] += (int) (mask >>> lane) & 1;
+                }
+                if ((mask & 0x2L) != 0 && (mask & 0x8L) != 0) {
+                    pairHits++;
+                }
+            }
+            double error = Math.sqrt(p * (1 - p) / draws);
+            for (int lane = 1; lane < BitSlicedSARKernel.LANES; lane += 2) {
+                double frequency = (double) hits[lane] / draws;
+                if (p == 0.0 || p == 1.0) {
+                    assertEquals(p, frequency, 0.0, "lane " + lane);
+                } else {
+                    assertEquals(p, frequency, Z * error, "lane " + lane + ", p=" + p);
+                }
+            }
+            // レーン 1 と 3 が独立なら両方立つ割合は p²
+            double pairError = Math.sqrt(p * p * (1 - p * p) / draws);
+            assertEquals(p * p, (double) pairHits / draws, Z * pairError, "lanes 1 and 3, p=" + p);
+        }
+    }
+
+    private static SimulationConfig smallConfig() {
+        SimulationConfig config = new SimulationConfig();
+        config.numVertices = 500;
+        config.averageDegree = 6;
+        config.initialAdoptionRate = 0.01;
+        config.maxTime = 60;
+        return config;
+    }
+
+    private static void assertSameDistributions(SimulationConfig config) {
+        Graph graph = DiscreteTimeTrendEffectSARSimulation.generateConnectedGraph(new RandomStream(5), config);
+        SARStepKernel scalar = new SARStepKernel(config);
+        BitSlicedSARKernel bitSliced = new BitSlicedSARKernel(config);
+        int lanes = BitSlicedSARKernel.LANES;
+        int length = config.maxTime + 1;
+        int[] aa = new int[length];
+        int[] ab = new int[length];
+        int[] r = new int[length];
+        int[][] aaLanes = new int[lanes][length];
+        int[][] abLanes = new int[lanes][length];
+        int[][] rLanes = new int[lanes][length];
+        int[] stopTimes = new int[lanes];
+
+        for (int point = 0; point < POINTS.length; point++) {
+            double alpha = POINTS[point][0];
+            double lambda = POINTS[point][1];
+            long[] scalarFinal = new long[RUNS];
+            int[] scalarStop = new int[RUNS];
+            for (int run = 0; run < RUNS; run++) {
+                RandomStream random = RandomStream.forPath(1, point, run);
+                scalarStop[run] = scalar.run(graph, alpha, lambda, random, aa, ab, r);
+                scalarFinal[run] = aa[config.maxTime] + ab[config.maxTime] + r[config.maxTime];
+            }
+            long[] bitSlicedFinal = new long[RUNS];
+            int[] bitSlicedStop = new int[RUNS];
+            for (int group = 0; group < RUNS / lanes; group++) {
+                RandomStream random = RandomStream.forPath(2, point, group);
+                bitSliced.run(graph, alpha, lambda, random, lanes, aaLanes, abLanes, rLanes, stopTimes);
+                for (int lane = 0; lane < lanes; lane++) {
+                    int run = group * lanes + lane;
+                    bitSlicedStop[run] = stopTimes[lane];
+                    bitSlicedFinal[run] = aaLanes[lane][config.maxTime] + abLanes[lane][config.maxTime]
+                            + rLanes[lane][config.maxTime];
+                }
+            }
+            String label = "alpha=" + alpha + " lambda=" + lambda;
+            assertMomentsAgree(scalarFinal, bitSlicedFinal, label);
+            double statistic = kolmogorovSmirnov(scalarStop, bitSlicedStop, config.maxTime);
+            assertTrue(statistic < KS_COEFFICIENT * Math.sqrt(2.0 / RUNS),
+                    "stop time KS statistic " + statistic + ", " + label);
+        }
+    }
+
+    /** 平均と分散（母分散）の差を、それぞれの標本誤差から見積もった標準誤差と比べる */
+    private static void assertMomentsAgree(long[] first, long[] second, String label) {
+        double[] a = moments(first);
+        double[] b = moments(second);
+        double meanError = Math.sqrt(a[1] / first.length + b[1] / second.length);
+        assertEquals(a[0], b[0], Math.max(Z * meanError, 1e-9), "final size mean, " + label);
+        // 標本分散の分散はおよそ (m4 - m2²) / n
+        double varianceError = Math.sqrt((a[2] - a[1] * a[1]) / first.length + (b[2] - b[1] * b[1]) / second.length);
+        assertEquals(a[1], b[1], Math.max(Z * varianceError, 1e-9), "final size variance, " + label);
+    }
+
+    /** {平均, 2 次の中心モーメント, 4 次の中心モーメント} */
+    private static double[] moments(long[] values) {
+        double mean = 0;
+        for (long value : values) {
+            mean += value;
+        }
+        mean /= values.length;
+        double m2 = 0;
+        double m4 = 0;
+        for (long value : values) {
+            double d = value - mean;
+            m2 += d * d;
+            m4 += d * d * d * d;
+        }
+        return new double[]{mean, m2 / values.length, m4 / values.length};
+    }
+
+    /** 値が [0, maxValue] の 2 標本の経験分布関数の差の最大値 */
+    private static double kolmogorovSmirnov(int[] first, int[] second, int maxValue) {
+        int[] firstCounts = new int[maxValue + 1];
+        int[] secondCounts = new int[maxValue + 1];
+        for (int value : first) {
+            firstCounts[value]++;
+        }
+        for (int value : second) {
+            secondCounts[value]++;
+        }
+        double statistic = 0;
+        long firstCumulative = 0;
+        long secondCumulative = 0;
+        for (int value = 0; value <= maxValue; value++) {
+            firstCumulative += firstCounts[value];
+            secondCumulative += secondCounts[value];
+            statistic = Math.max(statistic,
+                    Math.abs((double) firstCumulative / first.length - (double) secondCumulative / second.length));
+        }
+        return statistic;
+    }
+}
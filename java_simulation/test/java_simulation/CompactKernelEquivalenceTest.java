@@ -0,0 +1,93 @@
+package java_simulation;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java_simulation.DiscreteTimeTrendEffectSARSimulation.Graph;
+
+/**
+ * 同じ {@link ParallelSweepEngine#replicaStream} のシードで、SCALAR（{@link SARStepKernel}）と
+ * COMPACT（{@link CompactSARKernel}）の時系列と停止時刻がビット単位で一致することを確かめる。
+ */
+class CompactKernelEquivalenceTest {
+
+    @TempDir
+    Path graphDirectory;
+
+    @Test
+    void bernoulliSampling() throws IOException {
+        assertEquivalent(smallConfig());
+    }
+
+    @Test
+    void skipSamplingWithRecovery() throws IOException {
+        SimulationConfig config = smallConfig();
+        config.samplingMode = SimulationConfig.SamplingMode.SKIP;
+        config.gamma = 0.3;
+        config.ta = 2;
+        config.tb = 3;
+        assertEquivalent(config);
+    }
+
+    private SimulationConfig smallConfig() {
+        SimulationConfig config = new SimulationConfig();
+        config.graphType = NetworkFactory.ERDOS_RENYI;
+        config.numVertices = 2000;
+        config.averageDegree = 6;
+        config.initialAdoptionRate = 0.005;
+        config.maxTime = 60;
+        config.numBatches = 1;
+        config.networkIterationCount = 2;
+        config.simulationIterationCount = 4;
+        config.alphaValues = new double[]{0.0, 0.1, 0.5};
+        config.lambdaValues = new double[]{0.05, 0.2, 1.0};
+        config.graphEnsembleDir = graphDirectory.toString();
+        return config;
+    }
+
+    private static void assertEquivalent(SimulationConfig config) throws IOException {
+        config.kernelMode = SimulationConfig.KernelMode.SCALAR;
+        GraphEnsemble scalarEnsemble = GraphEnsemble.buildOrLoad(config);
+        SARStepKernel scalar = new SARStepKernel(config);
+        // SCALAR で保存した .csr をそのままマップする
+        config.kernelMode = SimulationConfig.KernelMode.COMPACT;
+        GraphEnsemble compactEnsemble = GraphEnsemble.buildOrLoad(config);
+        CompactSARKernel compact = new CompactSARKernel(config);
+
+        int length = config.maxTime + 1;
+        int[] aa1 = new int[length], ab1 = new int[length], r1 = new int[length];
+        int[] aa2 = new int[length], ab2 = new int[length], r2 = new int[length];
+        int batch = 1;
+        for (int netIter = 0; netIter < config.networkIterationCount; netIter++) {
+            int index = (batch - 1) * config.networkIterationCount + netIter;
+            Graph graph = scalarEnsemble.get(index);
+            OffHeapGraph offHeapGraph = compactEnsemble.getOffHeap(index);
+            for (int alphaIdx = 0; alphaIdx < config.alphaValues.length; alphaIdx++) {
+                for (int lambdaIdx = 0; lambdaIdx < config.lambdaValues.length; lambdaIdx++) {
+                    double alpha = config.alphaValues[alphaIdx];
+                    double lambda = config.lambdaValues[lambdaIdx];
+                    for (int simIter = 0; simIter < config.simulationIterationCount; simIter++) {
+                        int stop1 = scalar.run(graph, alpha, lambda,
+                                ParallelSweepEngine.replicaStream(config, batch, alphaIdx, lambdaIdx, netIter, simIter),
+                                aa1, ab1, r1);
+                        int stop2 = compact.run(offHeapGraph, alpha, lambda,
+                                ParallelSweepEngine.replicaStream(config, batch, alphaIdx, lambdaIdx, netIter, simIter),
+                                aa2, ab2, r2);
+                        String run = "alpha=" + alpha + " lambda=" + lambda + " netIter=" + netIter
+                                + " simIter=" + simIter;
+                        assertEquals(stop1, stop2, run);
+                        assertArrayEquals(aa1, aa2, run);
+                        assertArrayEquals(ab1, ab2, run);
+                        assertArrayEquals(r1, r2, run);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package java_simulation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * {@link ExactMoments} が N = 10^9 規模の値でも二乗和を桁あふれさせないことを確かめる。
+ */
+class ExactMomentsTest {
+
+    @Test
+    void squareSumBeyondLongRange() {
+        // 10^18 を 20 回足すと 2 × 10^19 > Long.MAX_VALUE
+        ExactMoments moments = new ExactMoments(1);
+        for (int k = 0; k < 20; k++) {
+            moments.add(0, 1_000_000_000);
+            moments.add(0, 0);
+        }
+        assertEquals(5e8, moments.mean(0, 40), 0.0);
+        assertEquals(2.5e17, moments.variance(0, 40), 0.0);
+    }
+
+    @Test
+    void matchesDirectComputation() {
+        int[] values = {3, 1, 4, 1, 5, 9, 2, 6, 5, 3, 5};
+        ExactMoments moments = new ExactMoments(2);
+        double sum = 0;
+        for (int value : values) {
+            moments.add(1, value);
+            sum += value;
+        }
+        double mean = sum / values.length;
+        double squares = 0;
+        for (int value : values) {
+            squares += (value - mean) * (value - mean);
+        }
+        assertEquals(mean, moments.mean(1, values.length), 1e-12);
+        assertEquals(squares / values.length, moments.variance(1, values.length), 1e-12);
+        assertEquals(0.0, moments.variance(0, values.length), 0.0);
+    }
+}
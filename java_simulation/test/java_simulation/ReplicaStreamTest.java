@@ -0,0 +1,88 @@
+package java_simulation;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * {@link ParallelSweepEngine#replicaStream} が掃引中の 1 回分と同じ乱数ストリームを返し、
+ * スイープ全体を実行しなくてもその回を再現できることを確かめる。
+ */
+class ReplicaStreamTest {
+
+    @TempDir
+    Path graphDirectory;
+
+    @Test
+    void reproducesEveryRunOfTheSweep() throws IOException {
+        SimulationConfig config = new SimulationConfig();
+        config.numVertices = 1000;
+        config.averageDegree = 6;
+        config.initialAdoptionRate = 0.005;
+        config.maxTime = 40;
+        config.numBatches = 2;
+        config.networkIterationCount = 2;
+        config.simulationIterationCount = 3;
+        config.alphaValues = new double[]{0.0, 0.3};
+        config.lambdaValues = new double[]{0.1, 0.6};
+        config.graphEnsembleDir = graphDirectory.toString();
+        config.numThreads = 4;
+        GraphEnsemble ensemble = GraphEnsemble.buildOrLoad(config);
+        ParallelSweepEngine engine = new ParallelSweepEngine(config, ensemble);
+
+        int batch = 2;
+        Map<String, int[]> runs = new ConcurrentHashMap<>();
+        engine.run(batch, new ResultSink() {
+            @Override
+            public void accept(int alphaIdx, int lambdaIdx, int iterationIndex, int[] aa, int[] ab, int[] r,
+                               int stopTime) {
+                runs.put(alphaIdx + "," + lambdaIdx + "," + iterationIndex, concat(aa, ab, r, stopTime));
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        SARStepKernel kernel = new SARStepKernel(config);
+        int length = config.maxTime + 1;
+        int[] aa = new int[length];
+        int[] ab = new int[length];
+        int[] r = new int[length];
+        int expectedRuns = 0;
+        for (int alphaIdx = 0; alphaIdx < config.alphaValues.length; alphaIdx++) {
+            for (int lambdaIdx = 0; lambdaIdx < config.lambdaValues.length; lambdaIdx++) {
+                for (int netIter = 0; netIter < config.networkIterationCount; netIter++) {
+                    for (int simIter = 0; simIter < config.simulationIterationCount; simIter++) {
+                        int stopTime = kernel.run(ensemble.get((batch - 1) * config.networkIterationCount + netIter),
+                                config.alphaValues[alphaIdx], config.lambdaValues[lambdaIdx],
+                                ParallelSweepEngine.replicaStream(config, batch, alphaIdx, lambdaIdx, netIter, simIter),
+                                aa, ab, r);
+                        int iterationIndex = netIter * config.simulationIterationCount + simIter;
+                        assertArrayEquals(concat(aa, ab, r, stopTime),
+                                runs.get(alphaIdx + "," + lambdaIdx + "," + iterationIndex));
+                        expectedRuns++;
+                    }
+                }
+            }
+        }
+        assertEquals(expectedRuns, runs.size());
+    }
+
+    private static int[] concat(int[] aa, int[] ab, int[] r, int stopTime) {
+        int length = aa.length;
+        int[] values = Arrays.copyOf(aa, 3 * length + 1);
+        System.arraycopy(ab, 0, values, length, length);
+        System.arraycopy(r, 0, values, 2 * length, length);
+        values[3 * length] = stopTime;
+        return values;
+    }
+}
@@ -0,0 +1,170 @@
+package java_simulation;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * --shard 0/2 と 1/2 で実行して {@link ShardMerger} でまとめた .npy が、分割しない実行とバイト単位で一致することを確かめる。
+ * シャード 1 は途中で落ちた状態（ジャーナルの最後の行が書きかけ、記録前のセルの行が壊れている）から再開させる。
+ */
+class ShardResumeMergeTest {
+
+    private static final String[] NAMES = {"aa_all_results", "ab_all_results", "r_all_results", "stop_time"};
+
+    @TempDir
+    Path temporary;
+
+    @Test
+    void mergedShardsMatchUnshardedRun() throws IOException {
+        Path reference = temporary.resolve("reference");
+        Path results = temporary.resolve("results");
+
+        SimulationConfig config = smallConfig();
+        ParallelSweepEngine engine = new ParallelSweepEngine(config, GraphEnsemble.buildOrLoad(config));
+        for (int batch = 1; batch <= config.numBatches; batch++) {
+            try (ResultSink sink = new NpyResultSink(reference.toString(), batch, config.alphaValues.length,
+                    config.lambdaValues.length, config.totalIterations(), config.maxTime)) {
+                engine.run(batch, sink);
+            }
+        }
+
+        runShard(results, "0/2");
+        runShard(results, "1/2");
+        simulateCrash(results, "1/2", 2);
+        runShard(results, "1/2");
+
+        ShardMerger.merge(results);
+        for (int batch = 1; batch <= config.numBatches; batch++) {
+            for (String name : NAMES) {
+                String fileName = NpyResultSink.fileName(name, batch);
+                assertArrayEquals(Files.readAllBytes(reference.resolve(fileName)),
+                        Files.readAllBytes(results.resolve(fileName)), fileName);
+            }
+        }
+    }
+
+    private SimulationConfig smallConfig() {
+        SimulationConfig config = new SimulationConfig();
+        config.numVertices = 300;
+        config.averageDegree = 6;
+        config.initialAdoptionRate = 0.01;
+        config.maxTime = 30;
+        config.numBatches = 2;
+        config.networkIterationCount = 2;
+        config.simulationIterationCount = 3;
+        // 9 セルを 2 シャードに分けるので、受け持つセル数は 5 と 4
+        config.alphaValues = new double[]{0.0, 0.3, 0.6};
+        config.lambdaValues = new double[]{0.05, 0.2, 0.5};
+        config.graphEnsembleDir = temporary.resolve("graphs").toString();
+        // セルが揃うたびにジャーナルに記録する
+        config.checkpointIntervalSeconds = 0;
+        return config;
+    }
+
+    /** --shard shard を付けて起動したときの設定 */
+    private SimulationConfig shardConfig(String shard) {
+        SimulationConfig config = smallConfig();
+        DiscreteTimeTrendEffectSARSimulation.parseArguments(new String[]{"--shard", shard}, config);
+        return config;
+    }
+
+    private void runShard(Path results, String shard) throws IOException {
+        SimulationConfig config = shardConfig(shard);
+        ParallelSweepEngine engine = new ParallelSweepEngine(config, GraphEnsemble.buildOrLoad(config));
+        Path directory = ShardResultSink.directory(results.toString(), config.shardIndex, config.shardCount);
+        Files.createDirectories(directory);
+        DiscreteTimeTrendEffectSARSimulation.runShard(config, engine, directory);
+    }
+
+    /**
+     * 完了したシャードを、ジャーナルの先頭 kept 行だけが記録済みで次の行を書きかけた状態に戻し、
+     * 記録していないセルの行をすべて -1 で上書きする。
+     */
+    private void simulateCrash(Path results, String shard, int kept) throws IOException {
+        SimulationConfig config = shardConfig(shard);
+        Path directory = ShardResultSink.directory(results.toString(), config.shardIndex, config.shardCount);
+        Path journalPath = directory.resolve(ShardJournal.FILE_NAME);
+        List<String> lines = Files.readAllLines(journalPath, StandardCharsets.UTF_8);
+        int[][] keptCells = new int[config.numBatches][];
+        for (int batch = 1; batch <= config.numBatches; batch++) {
+            keptCells[batch - 1] = new int[0];
+        }
+        StringBuilder text = new StringBuilder(lines.get(0)).append('\n');
+        for (int line = 1; line <= kept; line++) {
+            text.append(lines.get(line)).append('\n');
+            String[] fields = lines.get(line).split(" ");
+            int batch = Integer.parseInt(fields[0]);
+            int[] cells = keptCells[batch - 1];
+            cells = Arrays.copyOf(cells, cells.length + 1);
+            cells[cells.length - 1] = Integer.parseInt(fields[1]);
+            keptCells[batch - 1] = cells;
+        }
+        // 改行の無い最後の行は、そのまま読めば有効なセルに見える
+        text.append(lines.get(kept + 1));
+        Files.write(journalPath, text.toString().getBytes(StandardCharsets.UTF_8));
+
+        int numCells = config.alphaValues.length * config.lambdaValues.length;
+        int localCells = ShardResultSink.localCellCount(numCells, config.shardIndex, config.shardCount);
+        int iterations = config.totalIterations();
+        for (int batch = 1; batch <= config.numBatches; batch++) {
+            for (String name : NAMES) {
+                int[] cellShape = "stop_time".equals(name)
+                        ? new int[]{iterations} : new int[]{iterations, config.maxTime + 1};
+                corruptCells(directory.resolve(NpyResultSink.fileName(name, batch)), localCells, cellShape,
+                        keptCells[batch - 1], config.shardIndex, config.shardCount);
+            }
+        }
+
+        // 開き直すと書きかけの行は切り捨てられ、記録済みの kept セル以外が残りになる
+        try (ShardJournal journal = ShardJournal.open(journalPath, config)) {
+            int remaining = 0;
+            for (int batch = 1; batch <= config.numBatches; batch++) {
+                remaining += journal.pendingCells(batch).length;
+            }
+            assertEquals(config.numBatches * localCells - kept, remaining);
+        }
+        byte[] reopened = Files.readAllBytes(journalPath);
+        assertEquals('\n', reopened[reopened.length - 1], "the partial line is truncated");
+    }
+
+    /** ジャーナルに記録していないセルのブロックを 0xFF で埋める */
+    private static void corruptCells(Path path, int localCells, int[] cellShape, int[] keptCells, int shardIndex,
+                                     int shardCount) throws IOException {
+        long cellBytes = 4;
+        for (int length : cellShape) {
+            cellBytes *= length;
+        }
+        int[] shape = new int[cellShape.length + 1];
+        shape[0] = localCells;
+        System.arraycopy(cellShape, 0, shape, 1, cellShape.length);
+        long headerBytes = NpyArrayFile.header("<i4", shape).length;
+        byte[] garbage = new byte[(int) cellBytes];
+        Arrays.fill(garbage, (byte) 0xFF);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            for (int localCell = 0; localCell < localCells; localCell++) {
+                int cell = localCell * shardCount + shardIndex;
+                if (Arrays.stream(keptCells).anyMatch(kept -> kept == cell)) {
+                    continue;
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(garbage);
+                long position = headerBytes + localCell * cellBytes;
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+            }
+        }
+    }
+}